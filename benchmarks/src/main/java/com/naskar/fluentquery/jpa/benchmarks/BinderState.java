@@ -0,0 +1,26 @@
+package com.naskar.fluentquery.jpa.benchmarks;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import com.naskar.fluentquery.binder.BinderSQL;
+
+@State(Scope.Thread)
+public class BinderState {
+	
+	BinderSQL<BenchCustomer> binder;
+	
+	// the statement is configured once, executeBinder measures only the execution
+	@Setup(Level.Trial)
+	public void setup(DatabaseState db) {
+		this.binder = db.dao.binder(BenchCustomer.class);
+		
+		db.dao.configure(binder, db.dao.insert(BenchCustomer.class)
+			.value(i -> i.getId()).set(binder.get(i -> i.getId()))
+			.value(i -> i.getName()).set(binder.get(i -> i.getName()))
+			.value(i -> i.getAge()).set(binder.get(i -> i.getAge())));
+	}
+
+}
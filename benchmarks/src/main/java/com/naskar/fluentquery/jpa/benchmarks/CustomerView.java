@@ -0,0 +1,25 @@
+package com.naskar.fluentquery.jpa.benchmarks;
+
+public class CustomerView {
+	
+	private Long id;
+	
+	private String name;
+	
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+}
@@ -0,0 +1,90 @@
+package com.naskar.fluentquery.jpa.benchmarks;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import com.naskar.fluentquery.jpa.dao.CountStrategy;
+import com.naskar.fluentquery.jpa.dao.RowViewHandler;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DAOBenchmark {
+	
+	private static final String SQL = "select * from BenchCustomer where age >= ? order by id";
+	private static final List<Object> PARAMS = Collections.<Object>singletonList(0);
+	
+	private static final AtomicLong IDS = new AtomicLong(Long.MAX_VALUE / 2);
+	
+	@Benchmark
+	public List<BenchCustomer> listQuery(DatabaseState db, ScopeState scope) {
+		// entities left managed by the previous invocation would be served from the persistence context
+		scope.em.clear();
+		return db.dao.list(db.dao.query(BenchCustomer.class));
+	}
+	
+	// rendered SQL is looked up by every thread, the cache must not serialize them
+	@Benchmark
+	@Threads(4)
+	public List<BenchCustomer> listQueryContended(DatabaseState db, ScopeState scope) {
+		scope.em.clear();
+		return db.dao.list(db.dao.query(BenchCustomer.class));
+	}
+	
+	@Benchmark
+	public List<CustomerView> listProjection(DatabaseState db, ScopeState scope) {
+		return db.dao.list(db.dao.query(BenchCustomer.class), CustomerView.class);
+	}
+	
+	@Benchmark
+	public void nativeSQLRowHandler(DatabaseState db, ScopeState scope, Blackhole bh) {
+		db.dao.nativeSQL(SQL, PARAMS, row -> {
+			bh.consume(row.get("NAME"));
+			return true;
+		});
+	}
+	
+	@Benchmark
+	public void nativeSQLRowView(DatabaseState db, ScopeState scope, Blackhole bh) {
+		db.dao.nativeSQL(SQL, PARAMS, (RowViewHandler) row -> {
+			bh.consume(row.get(2));
+			return true;
+		});
+	}
+	
+	@Benchmark
+	public List<Map<String, Object>> listPagedExactCount(DatabaseState db, ScopeState scope) {
+		return db.dao.list(SQL, PARAMS, 0L, 20L);
+	}
+	
+	@Benchmark
+	public List<Map<String, Object>> listPagedWindowCount(DatabaseState db, ScopeState scope) {
+		return db.dao.list(SQL, PARAMS, 0L, 20L, CountStrategy.window());
+	}
+	
+	@Benchmark
+	public void executeBinder(DatabaseState db, ScopeState scope, BinderState binder) {
+		BenchCustomer c = new BenchCustomer();
+		c.setId(IDS.incrementAndGet());
+		c.setName("binder");
+		c.setAge(1);
+		
+		db.dao.execute(binder.binder, c);
+	}
+
+}
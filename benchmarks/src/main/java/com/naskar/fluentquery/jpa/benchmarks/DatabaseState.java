@@ -0,0 +1,83 @@
+package com.naskar.fluentquery.jpa.benchmarks;
+
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import com.naskar.fluentquery.jpa.EntityManagerProxyFactory;
+import com.naskar.fluentquery.jpa.SharedEntityManager;
+import com.naskar.fluentquery.jpa.dao.DAO;
+import com.naskar.fluentquery.jpa.dao.impl.DAOImpl;
+
+@State(Scope.Benchmark)
+public class DatabaseState {
+	
+	@Param({ "10", "1000", "10000" })
+	public int rows;
+	
+	EntityManagerFactory factory;
+	SharedEntityManager sem;
+	DAOImpl dao;
+	DAO proxy;
+	DAO readOnlyProxy;
+	DAO readOnlyConnectionProxy;
+	
+	@Setup(Level.Trial)
+	public void setup() {
+		Map<String, Object> props = new HashMap<String, Object>();
+		props.put("javax.persistence.jdbc.url", "jdbc:hsqldb:mem:bench" + rows);
+		props.put("eclipselink.logging.level", "OFF");
+		
+		this.factory = Persistence.createEntityManagerFactory("test", props);
+		this.sem = new SharedEntityManager();
+		
+		this.dao = new DAOImpl();
+		this.dao.setEm(sem);
+		
+		this.proxy = new EntityManagerProxyFactory(sem, factory::createEntityManager).create(DAO.class, dao);
+		this.readOnlyProxy = readOnly(false).create(DAO.class, dao);
+		this.readOnlyConnectionProxy = readOnly(true).create(DAO.class, dao);
+		
+		EntityManager em = factory.createEntityManager();
+		try {
+			em.getTransaction().begin();
+			
+			for(long i = 0; i < rows; i++) {
+				BenchCustomer c = new BenchCustomer();
+				c.setId(i);
+				c.setName("customer " + i);
+				c.setAge((int)(i % 90));
+				c.setBalance(BigDecimal.valueOf(i, 2));
+				em.persist(c);
+			}
+			
+			em.getTransaction().commit();
+		} finally {
+			em.close();
+		}
+	}
+	
+	private EntityManagerProxyFactory readOnly(boolean readOnlyConnection) {
+		EntityManagerProxyFactory proxyFactory = new EntityManagerProxyFactory(sem, factory::createEntityManager);
+		proxyFactory.setReadOnlyRule(EntityManagerProxyFactory.daoReads());
+		proxyFactory.setReadOnlyConnection(readOnlyConnection);
+		return proxyFactory;
+	}
+	
+	@TearDown(Level.Trial)
+	public void tearDown() {
+		factory.close();
+	}
+
+}
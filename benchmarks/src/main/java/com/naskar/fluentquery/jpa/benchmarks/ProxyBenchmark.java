@@ -0,0 +1,56 @@
+package com.naskar.fluentquery.jpa.benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.naskar.fluentquery.Query;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProxyBenchmark {
+	
+	@Benchmark
+	public Query<BenchCustomer> direct(DatabaseState db, ScopeState scope) {
+		return db.dao.query(BenchCustomer.class);
+	}
+	
+	@Benchmark
+	public Query<BenchCustomer> proxiedNested(DatabaseState db, ScopeState scope) {
+		return db.proxy.query(BenchCustomer.class);
+	}
+	
+	@Benchmark
+	public Query<BenchCustomer> proxiedWithTransaction(DatabaseState db) {
+		return db.proxy.query(BenchCustomer.class);
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<BenchCustomer> proxiedListWithTransaction(DatabaseState db) {
+		return db.proxy.list(db.dao.query(BenchCustomer.class));
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<BenchCustomer> proxiedListReadOnly(DatabaseState db) {
+		return db.readOnlyProxy.list(db.dao.query(BenchCustomer.class));
+	}
+	
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.MICROSECONDS)
+	public List<BenchCustomer> proxiedListReadOnlyConnection(DatabaseState db) {
+		return db.readOnlyConnectionProxy.list(db.dao.query(BenchCustomer.class));
+	}
+
+}
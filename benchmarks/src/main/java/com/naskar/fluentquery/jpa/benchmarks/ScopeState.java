@@ -0,0 +1,31 @@
+package com.naskar.fluentquery.jpa.benchmarks;
+
+import javax.persistence.EntityManager;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+@State(Scope.Thread)
+public class ScopeState {
+	
+	EntityManager em;
+	
+	@Setup(Level.Iteration)
+	public void begin(DatabaseState db) {
+		this.em = db.factory.createEntityManager();
+		this.em.getTransaction().begin();
+		db.sem.set(em);
+	}
+	
+	@TearDown(Level.Iteration)
+	public void end(DatabaseState db) {
+		// benchmark writes are discarded so every iteration sees the same rows
+		db.sem.removeEntityManager();
+		em.getTransaction().rollback();
+		em.close();
+	}
+
+}
@@ -1,8 +1,10 @@
 package com.naskar.fluentquery.jpa;
 
 import java.lang.reflect.InvocationHandler;
-import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Predicate;
 import java.util.function.Supplier;
 
 import javax.persistence.EntityManager;
@@ -10,71 +12,63 @@ import javax.persistence.EntityManager;
 public class EntityManagerInvocationHandler implements InvocationHandler {
 	
 	private Object target;
+	private EntityManagerScope scope;
 	private SharedEntityManager sem;
-	private Supplier<EntityManager> entityManagerSupplier;
+	private ConcurrentMap<Method, MethodInvoker> invokers;
+	private Predicate<Method> readOnlyRule;
 	
 	public EntityManagerInvocationHandler(
 		Object target,
 		SharedEntityManager sem,
 		Supplier<EntityManager> entityManagerSupplier) {
+		this(target, new EntityManagerScope(sem, entityManagerSupplier));
+	}
+	
+	public EntityManagerInvocationHandler(Object target, EntityManagerScope scope) {
 		this.target = target;
-		this.sem = sem;
-		this.entityManagerSupplier = entityManagerSupplier;
+		this.scope = scope;
+		this.sem = scope.getSharedEntityManager();
+		this.invokers = new ConcurrentHashMap<Method, MethodInvoker>();
+		this.readOnlyRule = m -> false;
+	}
+	
+	public void setReadOnlyRule(Predicate<Method> readOnlyRule) {
+		this.readOnlyRule = readOnlyRule;
+		this.invokers.clear();
+	}
+	
+	void prepare(Class<?> type) {
+		for(Method m : type.getMethods()) {
+			invokerOf(m);
+		}
 	}
 	
 	@Override
 	public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-		Object result = null;
+		MethodInvoker invoker = invokerOf(method);
 		
-		EntityManager em = null;
-		boolean created = false;
-		try {
-			em = sem.getEntityManager();
-			if(em == null) {
-				em = entityManagerSupplier.get();
-				em.getTransaction().begin();
-				sem.set(em);
-				created = true;
-			}
-			
-			result = method.invoke(target, args);
-			
-			if(created) {
-				em.getTransaction().commit();
-			}
-			
-		} catch(Exception e) {
-			if(created) {
-				if(em != null) {
-					try {
-						em.getTransaction().rollback();
-					} catch(Exception et) {
-						// TODO: logger;
-						et.printStackTrace();
-					}
-				}
-			}
-			
-			if(e instanceof InvocationTargetException) {
-				throw ((InvocationTargetException)e).getTargetException();
-			} else {
-				throw e;
-			}
-			
-		} finally {
-			if(created) {
-				sem.removeEntityManager();
-				if(em != null) {
-					em.close();
-				}
-			}
+		// nested calls run in the outer transaction, straight to the target
+		if(sem.getEntityManager() != null && (!invoker.isUnitOfWork() || sem.isFlushDeferred())) {
+			return invoker.invoke(args);
 		}
 		
-		return result;
+		return scope.execute(() -> invoker.call(args), invoker.isUnitOfWork(), invoker.isReadOnly());
+	}
+	
+	private MethodInvoker invokerOf(Method method) {
+		MethodInvoker invoker = invokers.get(method);
+		if(invoker == null) {
+			invoker = invokers.computeIfAbsent(method, m -> new MethodInvoker(target, m, readOnlyRule));
+		}
+		return invoker;
 	}
 	
 	public Object getTarget() {
 		return this.target;
 	}
+	
+	public EntityManagerScope getScope() {
+		return this.scope;
+	}
 
 }
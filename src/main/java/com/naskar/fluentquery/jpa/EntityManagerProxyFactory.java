@@ -0,0 +1,83 @@
+package com.naskar.fluentquery.jpa;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+import javax.persistence.EntityManager;
+
+public class EntityManagerProxyFactory {
+	
+	private EntityManagerScope scope;
+	private Predicate<Method> readOnlyRule;
+	
+	public EntityManagerProxyFactory(
+		SharedEntityManager sem,
+		Supplier<EntityManager> entityManagerSupplier) {
+		this(sem, entityManagerSupplier, null);
+	}
+	
+	// read-only invocations go to the replica, the proxies of a factory share the read-your-writes windows
+	public EntityManagerProxyFactory(
+		SharedEntityManager sem,
+		Supplier<EntityManager> entityManagerSupplier,
+		Supplier<EntityManager> replicaSupplier) {
+		this.scope = new EntityManagerScope(sem, entityManagerSupplier, replicaSupplier);
+		this.readOnlyRule = m -> false;
+	}
+	
+	public void setReadYourWritesMillis(long readYourWritesMillis) {
+		this.scope.setReadYourWritesMillis(readYourWritesMillis);
+	}
+	
+	public void setSessionKey(Supplier<?> sessionKey) {
+		this.scope.setSessionKey(sessionKey);
+	}
+	
+	public void setReadOnlyConnection(boolean readOnlyConnection) {
+		this.scope.setReadOnlyConnection(readOnlyConnection);
+	}
+	
+	// methods matching the rule run as if annotated with @ReadOnly
+	public void setReadOnlyRule(Predicate<Method> readOnlyRule) {
+		this.readOnlyRule = readOnlyRule;
+	}
+	
+	public static Predicate<Method> namePrefixes(String... prefixes) {
+		List<String> names = Arrays.asList(prefixes);
+		return m -> names.stream().anyMatch(p -> m.getName().startsWith(p));
+	}
+	
+	// the DAO methods that only read
+	public static Predicate<Method> daoReads() {
+		return namePrefixes("list", "single", "page", "stream", "table", "nativeSQL", "parallelScan", 
+				"getColumnsFromTable", "getPrimaryKeyFromTable", "getTableMetadata");
+	}
+	
+	// method handles and transaction metadata are resolved here, not on the first call
+	@SuppressWarnings("unchecked")
+	public <T> T create(Class<T> type, T target) {
+		if(!type.isInterface()) {
+			throw new IllegalArgumentException("Not an interface: " + type.getName());
+		}
+		
+		EntityManagerInvocationHandler handler = new EntityManagerInvocationHandler(target, scope);
+		handler.setReadOnlyRule(readOnlyRule);
+		handler.prepare(type);
+		handler.prepare(Object.class);
+		
+		return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type }, handler);
+	}
+	
+	public SharedEntityManager getSharedEntityManager() {
+		return scope.getSharedEntityManager();
+	}
+	
+	public EntityManagerScope getScope() {
+		return scope;
+	}
+
+}
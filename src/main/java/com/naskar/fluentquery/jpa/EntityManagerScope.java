@@ -0,0 +1,221 @@
+package com.naskar.fluentquery.jpa;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.persistence.EntityManager;
+import javax.persistence.FlushModeType;
+
+public class EntityManagerScope {
+	
+	private static final Logger logger = Logger.getLogger(EntityManagerScope.class.getName());
+	
+	private static final int PURGE_WRITES_ABOVE = 1024;
+	
+	private SharedEntityManager sem;
+	private Supplier<EntityManager> entityManagerSupplier;
+	private Supplier<EntityManager> replicaSupplier;
+	private long readYourWritesMillis;
+	private Supplier<?> sessionKey;
+	private ConcurrentMap<Object, Long> lastWrites;
+	private boolean readOnlyConnection;
+	
+	public EntityManagerScope(
+		SharedEntityManager sem,
+		Supplier<EntityManager> entityManagerSupplier) {
+		this(sem, entityManagerSupplier, null);
+	}
+	
+	public EntityManagerScope(
+		SharedEntityManager sem,
+		Supplier<EntityManager> entityManagerSupplier,
+		Supplier<EntityManager> replicaSupplier) {
+		this.sem = sem;
+		this.entityManagerSupplier = entityManagerSupplier;
+		this.replicaSupplier = replicaSupplier;
+		this.lastWrites = new ConcurrentHashMap<Object, Long>();
+	}
+	
+	// read-only invocations of a session stay on the primary for this long after it commits a write
+	public void setReadYourWritesMillis(long readYourWritesMillis) {
+		this.readYourWritesMillis = readYourWritesMillis;
+	}
+	
+	// names the session of the current call (a user or request token), whatever thread serves it;
+	// without a key, or when it returns null, writes do not steer later reads
+	public void setSessionKey(Supplier<?> sessionKey) {
+		this.sessionKey = sessionKey;
+	}
+	
+	// read-only invocations also mark the JDBC connection read-only, at the cost of
+	// beginning the database transaction up front and two more driver calls per invocation
+	public void setReadOnlyConnection(boolean readOnlyConnection) {
+		this.readOnlyConnection = readOnlyConnection;
+	}
+	
+	private boolean isReplicaReadable() {
+		if(replicaSupplier == null) {
+			return false;
+		}
+		
+		Object key = sessionKey != null ? sessionKey.get() : null;
+		if(key == null) {
+			return true;
+		}
+		
+		Long last = lastWrites.get(key);
+		if(last == null) {
+			return true;
+		}
+		
+		if(System.currentTimeMillis() - last >= readYourWritesMillis) {
+			lastWrites.remove(key, last);
+			return true;
+		}
+		return false;
+	}
+	
+	private void written() {
+		Object key = sessionKey != null ? sessionKey.get() : null;
+		if(key == null) {
+			return;
+		}
+		
+		long now = System.currentTimeMillis();
+		lastWrites.put(key, now);
+		
+		// sessions that stopped writing are dropped once their window has passed
+		if(lastWrites.size() > PURGE_WRITES_ABOVE) {
+			lastWrites.values().removeIf(last -> now - last >= readYourWritesMillis);
+		}
+	}
+	
+	public <R> R execute(Callable<R> action) throws Exception {
+		return execute(action, false);
+	}
+	
+	public <R> R execute(Callable<R> action, boolean deferFlush) throws Exception {
+		return execute(action, deferFlush, false);
+	}
+	
+	public <R> R execute(Callable<R> action, boolean deferFlush, boolean readOnly) throws Exception {
+		R result = null;
+		
+		EntityManager em = null;
+		Connection readOnlyConnection = null;
+		boolean created = false;
+		boolean deferred = sem.isFlushDeferred();
+		try {
+			em = sem.getEntityManager();
+			if(em == null) {
+				// writes, and everything nested in them, stay on the primary
+				boolean replica = readOnly && isReplicaReadable();
+				em = replica ? replicaSupplier.get() : entityManagerSupplier.get();
+				if(readOnly) {
+					// nothing to flush before the queries
+					em.setFlushMode(FlushModeType.COMMIT);
+				}
+				em.getTransaction().begin();
+				sem.set(em);
+				sem.setReplica(replica);
+				created = true;
+				
+				if(readOnly) {
+					if(this.readOnlyConnection) {
+						readOnlyConnection = readOnly(em);
+					}
+					sem.setReadOnly(true);
+				}
+			}
+			
+			if(deferFlush) {
+				sem.setFlushDeferred(true);
+			}
+			
+			result = action.call();
+			
+			if(created) {
+				if(readOnlyConnection != null) {
+					// pending writes fail here, while the connection still refuses them
+					em.flush();
+					readWrite(readOnlyConnection, true);
+					readOnlyConnection = null;
+				}
+				boolean written = sem.isWritten();
+				em.getTransaction().commit();
+				
+				if(written && replicaSupplier != null) {
+					written();
+				}
+			}
+			
+		} catch(Exception e) {
+			if(created) {
+				if(readOnlyConnection != null) {
+					try {
+						readWrite(readOnlyConnection, false);
+					} catch(Exception ec) {
+						logger.log(Level.WARNING, "Could not restore the read-only connection", ec);
+					}
+				}
+				if(em != null) {
+					try {
+						em.getTransaction().rollback();
+					} catch(Exception et) {
+						logger.log(Level.WARNING, "Could not roll back the transaction", et);
+					}
+				}
+			}
+			
+			throw e;
+			
+		} finally {
+			if(!created && deferFlush && !deferred) {
+				sem.setFlushDeferred(false);
+			}
+			
+			if(created) {
+				sem.removeEntityManager();
+				if(em != null) {
+					em.close();
+				}
+			}
+		}
+		
+		return result;
+	}
+	
+	private Connection readOnly(EntityManager em) {
+		try {
+			Connection conn = em.unwrap(Connection.class);
+			if(conn != null && !conn.isReadOnly()) {
+				conn.setReadOnly(true);
+				return conn;
+			}
+		} catch(Exception e) {
+			// no connection access, the transaction stays read-write
+		}
+		return null;
+	}
+	
+	// the database transaction ends before the flag is restored, drivers refuse it mid-transaction
+	private void readWrite(Connection conn, boolean commit) throws SQLException {
+		if(commit) {
+			conn.commit();
+		} else {
+			conn.rollback();
+		}
+		conn.setReadOnly(false);
+	}
+	
+	public SharedEntityManager getSharedEntityManager() {
+		return sem;
+	}
+
+}
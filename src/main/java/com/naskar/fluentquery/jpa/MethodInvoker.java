@@ -0,0 +1,82 @@
+package com.naskar.fluentquery.jpa;
+
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.UndeclaredThrowableException;
+import java.util.function.Predicate;
+
+class MethodInvoker {
+	
+	private static final Object[] NO_ARGS = new Object[0];
+	
+	private final MethodHandle handle;
+	private final boolean unitOfWork;
+	private final boolean readOnly;
+	
+	MethodInvoker(Object target, Method method, Predicate<Method> readOnlyRule) {
+		this.handle = handleOf(target, method);
+		this.unitOfWork = isAnnotated(target, method, UnitOfWork.class);
+		this.readOnly = isAnnotated(target, method, ReadOnly.class) || readOnlyRule.test(method);
+	}
+	
+	private static MethodHandle handleOf(Object target, Method method) {
+		try {
+			try {
+				method.setAccessible(true);
+			} catch(RuntimeException e) {
+				// public interfaces are reachable without it
+			}
+			
+			// (Object[])Object, bound to the target, so the call is invokeExact without boxing the receiver
+			return MethodHandles.lookup().unreflect(method)
+				.asFixedArity()
+				.bindTo(target)
+				.asSpreader(Object[].class, method.getParameterCount())
+				.asType(MethodType.methodType(Object.class, Object[].class));
+			
+		} catch(IllegalAccessException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private static boolean isAnnotated(Object target, Method method, Class<? extends Annotation> annotation) {
+		if(method.isAnnotationPresent(annotation) 
+				|| method.getDeclaringClass().isAnnotationPresent(annotation)
+				|| target.getClass().isAnnotationPresent(annotation)) {
+			return true;
+		}
+		
+		try {
+			return target.getClass().getMethod(method.getName(), method.getParameterTypes())
+					.isAnnotationPresent(annotation);
+		} catch(NoSuchMethodException e) {
+			return false;
+		}
+	}
+	
+	boolean isUnitOfWork() {
+		return unitOfWork;
+	}
+	
+	boolean isReadOnly() {
+		return readOnly;
+	}
+	
+	Object invoke(Object[] args) throws Throwable {
+		return (Object)handle.invokeExact(args != null ? args : NO_ARGS);
+	}
+	
+	Object call(Object[] args) throws Exception {
+		try {
+			return invoke(args);
+		} catch(Exception | Error e) {
+			throw e;
+		} catch(Throwable e) {
+			throw new UndeclaredThrowableException(e);
+		}
+	}
+
+}
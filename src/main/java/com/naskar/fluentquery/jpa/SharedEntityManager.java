@@ -2,6 +2,10 @@ package com.naskar.fluentquery.jpa;
 
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
 import javax.persistence.EntityGraph;
 import javax.persistence.EntityManager;
@@ -20,11 +24,31 @@ import javax.persistence.metamodel.Metamodel;
 
 @SuppressWarnings("rawtypes")
 public class SharedEntityManager implements EntityManager {
+
+	private static final Logger logger = Logger.getLogger(SharedEntityManager.class.getName());
 	
 	private ThreadLocal<EntityManager> scope;
+	private ThreadLocal<Boolean> flushDeferred;
+	private ThreadLocal<Boolean> readOnly;
+	private ThreadLocal<Boolean> replica;
+	private ThreadLocal<Boolean> written;
+	private List<Consumer<EntityManager>> closeListeners;
 	
 	public SharedEntityManager() {
 		this.scope = new ThreadLocal<EntityManager>();
+		this.flushDeferred = new ThreadLocal<Boolean>();
+		this.readOnly = new ThreadLocal<Boolean>();
+		this.replica = new ThreadLocal<Boolean>();
+		this.written = new ThreadLocal<Boolean>();
+		this.closeListeners = new CopyOnWriteArrayList<Consumer<EntityManager>>();
+	}
+	
+	public void addCloseListener(Consumer<EntityManager> listener) {
+		this.closeListeners.add(listener);
+	}
+	
+	public void removeCloseListener(Consumer<EntityManager> listener) {
+		this.closeListeners.remove(listener);
 	}
 	
 	public void set(EntityManager em) {
@@ -35,22 +59,90 @@ public class SharedEntityManager implements EntityManager {
 		return this.scope.get();
 	}
 	
+	public boolean isFlushDeferred() {
+		return Boolean.TRUE.equals(this.flushDeferred.get());
+	}
+	
+	public void setFlushDeferred(boolean deferred) {
+		if(deferred) {
+			this.flushDeferred.set(Boolean.TRUE);
+		} else {
+			this.flushDeferred.remove();
+		}
+	}
+	
+	public boolean isReadOnly() {
+		return Boolean.TRUE.equals(this.readOnly.get());
+	}
+	
+	public void setReadOnly(boolean readOnly) {
+		if(readOnly) {
+			this.readOnly.set(Boolean.TRUE);
+		} else {
+			this.readOnly.remove();
+		}
+	}
+	
+	public boolean isReplica() {
+		return Boolean.TRUE.equals(this.replica.get());
+	}
+	
+	public void setReplica(boolean replica) {
+		if(replica) {
+			this.replica.set(Boolean.TRUE);
+		} else {
+			this.replica.remove();
+		}
+	}
+	
+	// the current transaction changed rows
+	public boolean isWritten() {
+		return Boolean.TRUE.equals(this.written.get());
+	}
+	
+	public void markWritten() {
+		this.written.set(Boolean.TRUE);
+	}
+	
 	public void removeEntityManager() {
+		EntityManager em = this.scope.get();
 		this.scope.remove();
+		this.flushDeferred.remove();
+		this.readOnly.remove();
+		this.replica.remove();
+		this.written.remove();
+		
+		if(em != null) {
+			fireClose(em);
+		}
+	}
+	
+	private void fireClose(EntityManager em) {
+		for(Consumer<EntityManager> listener : closeListeners) {
+			try {
+				listener.accept(em);
+			} catch(Exception e) {
+				logger.log(Level.WARNING, "Close listener failed: " + listener, e);
+			}
+		}
 	}
 	
 	// ----
 	
 	public void persist(Object entity) {
 		getEntityManager().persist(entity);
+		markWritten();
 	}
 
 	public <T> T merge(T entity) {
-		return getEntityManager().merge(entity);
+		T merged = getEntityManager().merge(entity);
+		markWritten();
+		return merged;
 	}
 
 	public void remove(Object entity) {
 		getEntityManager().remove(entity);
+		markWritten();
 	}
 
 	public <T> T find(Class<T> entityClass, Object primaryKey) {
@@ -206,7 +298,9 @@ public class SharedEntityManager implements EntityManager {
 	}
 
 	public void close() {
-		getEntityManager().close();
+		EntityManager em = getEntityManager();
+		fireClose(em);
+		em.close();
 	}
 
 	public boolean isOpen() {
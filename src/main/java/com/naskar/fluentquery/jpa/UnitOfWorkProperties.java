@@ -0,0 +1,30 @@
+package com.naskar.fluentquery.jpa;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.eclipse.persistence.config.BatchWriting;
+import org.eclipse.persistence.config.CommitOrderType;
+import org.eclipse.persistence.config.PersistenceUnitProperties;
+
+public final class UnitOfWorkProperties {
+	
+	public static final int DEFAULT_BATCH_SIZE = 100;
+	
+	private UnitOfWorkProperties() {
+	}
+	
+	public static Map<String, Object> of() {
+		return of(DEFAULT_BATCH_SIZE);
+	}
+	
+	// deferred writes are grouped by EclipseLink in JDBC batches, ordered by id to keep the batches long
+	public static Map<String, Object> of(int batchSize) {
+		Map<String, Object> properties = new HashMap<String, Object>();
+		properties.put(PersistenceUnitProperties.BATCH_WRITING, BatchWriting.JDBC);
+		properties.put(PersistenceUnitProperties.BATCH_WRITING_SIZE, String.valueOf(batchSize));
+		properties.put(PersistenceUnitProperties.PERSISTENCE_CONTEXT_COMMIT_ORDER, CommitOrderType.Id);
+		return properties;
+	}
+
+}
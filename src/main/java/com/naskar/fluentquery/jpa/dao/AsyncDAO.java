@@ -0,0 +1,27 @@
+package com.naskar.fluentquery.jpa.dao;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+import com.naskar.fluentquery.Query;
+
+public interface AsyncDAO extends AutoCloseable {
+	
+	<R> CompletableFuture<R> submit(Function<DAO, R> task);
+	
+	<T> CompletableFuture<List<T>> list(Query<T> query);
+	
+	<T> CompletableFuture<List<T>> list(Query<T> query, Long first, Long max);
+	
+	<T, R> CompletableFuture<List<R>> list(Query<T> query, Class<R> clazzR);
+	
+	CompletableFuture<List<Map<String, Object>>> list(String sql, List<Object> params, Long first, Long max);
+	
+	<T> CompletableFuture<T> single(Query<T> query);
+	
+	@Override
+	void close();
+
+}
@@ -0,0 +1,151 @@
+package com.naskar.fluentquery.jpa.dao;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.sql.Blob;
+import java.sql.SQLException;
+
+public class BinaryContent {
+	
+	private static final int BUFFER_SIZE = 64 * 1024;
+	
+	private interface Source {
+		
+		InputStream open() throws IOException;
+		
+	}
+	
+	private Source source;
+	private long length;
+	
+	private BinaryContent(Source source, long length) {
+		if(length < 0) {
+			throw new IllegalArgumentException("length must not be negative: " + length);
+		}
+		this.source = source;
+		this.length = length;
+	}
+	
+	public static BinaryContent of(Path path) {
+		try {
+			return new BinaryContent(() -> Files.newInputStream(path), Files.size(path));
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	// the channel is read once and left open, it belongs to the caller
+	public static BinaryContent of(ReadableByteChannel channel, long length) {
+		return new BinaryContent(() -> unclosed(Channels.newInputStream(channel)), length);
+	}
+	
+	// the stream is read once and left open, it belongs to the caller
+	public static BinaryContent of(InputStream in, long length) {
+		return new BinaryContent(() -> unclosed(in), length);
+	}
+	
+	public static BinaryContent of(byte[] bytes) {
+		return new BinaryContent(() -> new ByteArrayInputStream(bytes), bytes.length);
+	}
+	
+	public InputStream open() throws IOException {
+		return source.open();
+	}
+	
+	public long getLength() {
+		return length;
+	}
+	
+	// for parameters that can only be bound as values
+	public byte[] toBytes() throws IOException {
+		if(length > Integer.MAX_VALUE - 8) {
+			throw new IllegalStateException("Content too large for an array: " + length);
+		}
+		
+		ByteArrayOutputStream out = new ByteArrayOutputStream((int)length);
+		transfer(open(), Channels.newChannel(out));
+		return out.toByteArray();
+	}
+	
+	private static InputStream unclosed(InputStream in) {
+		return new FilterInputStream(in) {
+			
+			@Override
+			public void close() {
+			}
+			
+		};
+	}
+	
+	// copies a binary column value (stream, bytes, blob or channel) with a bounded buffer
+	public static long transfer(Object value, WritableByteChannel target) throws IOException {
+		if(value == null) {
+			return 0L;
+		}
+		
+		if(value instanceof byte[]) {
+			ByteBuffer buffer = ByteBuffer.wrap((byte[])value);
+			while(buffer.hasRemaining()) {
+				target.write(buffer);
+			}
+			return ((byte[])value).length;
+		}
+		
+		if(value instanceof ReadableByteChannel) {
+			return transfer((ReadableByteChannel)value, target);
+		}
+		
+		InputStream in;
+		if(value instanceof InputStream) {
+			in = (InputStream)value;
+		} else if(value instanceof Blob) {
+			try {
+				in = ((Blob)value).getBinaryStream();
+			} catch(SQLException e) {
+				throw new IOException(e);
+			}
+		} else {
+			throw new IllegalArgumentException("Not a binary value: " + value.getClass().getName());
+		}
+		
+		try {
+			return transfer(Channels.newChannel(in), target);
+		} finally {
+			in.close();
+		}
+	}
+	
+	public static long transfer(Object value, Path target) throws IOException {
+		try(FileChannel out = FileChannel.open(target, 
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+			return transfer(value, out);
+		}
+	}
+	
+	private static long transfer(ReadableByteChannel in, WritableByteChannel out) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+		
+		long total = 0L;
+		while(in.read(buffer) > -1) {
+			buffer.flip();
+			while(buffer.hasRemaining()) {
+				total += out.write(buffer);
+			}
+			buffer.clear();
+		}
+		
+		return total;
+	}
+
+}
@@ -0,0 +1,49 @@
+package com.naskar.fluentquery.jpa.dao;
+
+public class ColumnMetadata {
+	
+	private String name;
+	private int type;
+	private String typeName;
+	private boolean nullable;
+	private int size;
+	private int scale;
+	
+	public ColumnMetadata(String name, int type, String typeName, boolean nullable) {
+		this(name, type, typeName, nullable, 0, 0);
+	}
+	
+	public ColumnMetadata(String name, int type, String typeName, boolean nullable, int size, int scale) {
+		this.name = name;
+		this.type = type;
+		this.typeName = typeName;
+		this.nullable = nullable;
+		this.size = size;
+		this.scale = scale;
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public int getType() {
+		return type;
+	}
+	
+	public String getTypeName() {
+		return typeName;
+	}
+	
+	public boolean isNullable() {
+		return nullable;
+	}
+	
+	public int getSize() {
+		return size;
+	}
+	
+	public int getScale() {
+		return scale;
+	}
+
+}
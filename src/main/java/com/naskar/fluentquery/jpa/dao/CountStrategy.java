@@ -0,0 +1,91 @@
+package com.naskar.fluentquery.jpa.dao;
+
+public class CountStrategy {
+	
+	public enum Type {
+		
+		NONE,
+		
+		EXACT,
+		
+		WINDOW,
+		
+		// counted on another connection, outside the caller's transaction
+		CONCURRENT,
+		
+		CACHED,
+		
+		CAPPED
+		
+	}
+	
+	private static final CountStrategy NONE = new CountStrategy(Type.NONE, 0L);
+	private static final CountStrategy EXACT = new CountStrategy(Type.EXACT, 0L);
+	private static final CountStrategy WINDOW = new CountStrategy(Type.WINDOW, 0L);
+	private static final CountStrategy CONCURRENT = new CountStrategy(Type.CONCURRENT, 0L);
+	
+	private Type type;
+	private long value;
+	
+	private CountStrategy(Type type, long value) {
+		this.type = type;
+		this.value = value;
+	}
+	
+	public static CountStrategy none() {
+		return NONE;
+	}
+	
+	public static CountStrategy exact() {
+		return EXACT;
+	}
+	
+	public static CountStrategy window() {
+		return WINDOW;
+	}
+	
+	public static CountStrategy concurrent() {
+		return CONCURRENT;
+	}
+	
+	public static CountStrategy cached(long ttlMillis) {
+		return new CountStrategy(Type.CACHED, ttlMillis);
+	}
+	
+	public static CountStrategy capped(long limit) {
+		if(limit < 0) {
+			throw new IllegalArgumentException("limit must not be negative: " + limit);
+		}
+		return new CountStrategy(Type.CAPPED, limit);
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public long getTtlMillis() {
+		return value;
+	}
+	
+	public long getLimit() {
+		return value;
+	}
+	
+	@Override
+	public int hashCode() {
+		return 31 * type.hashCode() + Long.hashCode(value);
+	}
+	
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
+		if(!(obj instanceof CountStrategy)) {
+			return false;
+		}
+		CountStrategy other = (CountStrategy)obj;
+		return type == other.type && value == other.value;
+	}
+
+}
@@ -0,0 +1,13 @@
+package com.naskar.fluentquery.jpa.dao;
+
+public enum CountType {
+	
+	EXACT,
+	
+	ESTIMATED,
+	
+	CAPPED,
+	
+	UNKNOWN
+
+}
@@ -1,8 +1,10 @@
 package com.naskar.fluentquery.jpa.dao;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.function.BiConsumer;
+import java.util.stream.Stream;
 
 import com.naskar.fluentquery.Delete;
 import com.naskar.fluentquery.Into;
@@ -15,18 +17,59 @@ public interface DAO {
 	<T> T insert(T o);
 
 	<T> T update(T o);
+	
+	<T> Snapshot<T> snapshot(T o);
+	
+	// writes the columns changed since the snapshot, embedded ids fall back to update(o)
+	<T> int update(T o, Snapshot<T> snapshot);
 
 	<T> T delete(T o);
+	
+	<T> int deleteById(Class<T> clazz, Object id);
+	
+	<T> int deleteAllById(Class<T> clazz, Collection<?> ids);
+	
+	void flush();
 
 	<T> List<T> list(Query<T> query);
 	
 	<T> List<T> list(Query<T> query, Long first, Long max);
 	
+	<T> List<T> list(Query<T> query, Long first, Long max, CountStrategy countStrategy);
+	
+	<T> List<T> list(Query<T> query, QueryOptions options);
+	
+	<T> KeysetPage<T> page(Query<T> query, Keyset<T> keyset, Long max);
+	
 	List<Map<String, Object>> list(String sql, List<Object> params, Long first, Long max);
+	
+	List<Map<String, Object>> list(String sql, List<Object> params, QueryOptions options);
+	
+	ResultTable table(String sql, List<Object> params, Long first, Long max);
+	
+	List<Map<String, Object>> list(String sql, List<Object> params, Long first, Long max, 
+			CountStrategy countStrategy);
 
 	<T> Query<T> query(Class<T> clazz);
 	
 	<T> T single(Query<T> query);
+	
+	<T> T single(Query<T> query, QueryOptions options);
+	
+	// streams hold the connection, they are read and closed inside the calling scope
+	<T> Stream<T> stream(Query<T> query);
+	
+	<T> Stream<T> stream(Query<T> query, QueryOptions options);
+	
+	Stream<Map<String, Object>> stream(String sql, List<Object> params);
+	
+	Stream<Map<String, Object>> stream(String sql, List<Object> params, QueryOptions options);
+	
+	// each partition reads in its own transaction, rows are not a consistent snapshot of the table
+	<T> long parallelScan(Query<T> query, String partitionColumn, int partitions, RowHandler handler);
+	
+	<T> long parallelScan(Query<T> query, String partitionColumn, int partitions, 
+			ScanPartitioning partitioning, boolean ordered, RowHandler handler);
 
 	<T, R> List<R> list(Query<T> query, Class<R> clazzR);
 	
@@ -34,11 +77,23 @@ public interface DAO {
 	
 	void nativeSQL(String sql, List<Object> params, RowHandler handler);
 	
+	void nativeSQL(String sql, List<Object> params, QueryOptions options, RowHandler handler);
+	
 	void nativeExecute(String sql, List<Object> params, RowHandler handlerKeys);
 	
 	void insert(String table, 
 			Map<String, Object> params, 
 			BiConsumer<String, List<Object>> call);
+	
+	// rows are grouped by column set, the insert order is only kept within a group
+	int insertAll(String table, Iterable<Map<String, Object>> rows);
+	
+	// each row counts once whether it was inserted or updated
+	<T> int upsert(Into<T> into);
+	
+	<T> int upsertAll(Iterable<Into<T>> intos);
+	
+	int upsertAll(String table, Iterable<Map<String, Object>> rows);
 
 	void update(String table, 
 			Map<String, Object> params, 
@@ -66,8 +121,26 @@ public interface DAO {
 	<T> void execute(Delete<T> delete);
 	
 	<R> void execute(BinderSQL<R> binder, R r);
+	
+	<R> List<int[]> executeBatch(BinderSQL<R> binder, Iterable<R> rows);
+	
+	<R> List<int[]> executeBatch(BinderSQL<R> binder, Iterable<R> rows, RowHandler handlerKeys);
+	
+	<T> List<int[]> executeBatchInsert(Iterable<Into<T>> intos);
+	
+	<T> List<int[]> executeBatchUpdate(Iterable<Update<T>> updates);
+	
+	<T> List<int[]> executeBatchDelete(Iterable<Delete<T>> deletes);
 
 	List<String> getPrimaryKeyFromTable(String tableName);
 
 	List<String> getColumnsFromTable(String tableName);
+	
+	TableMetadata getTableMetadata(String tableName);
+	
+	int preloadMetadata(String schema);
+	
+	void invalidateMetadata(String tableName);
+	
+	void invalidateMetadata();
 }
@@ -0,0 +1,7 @@
+package com.naskar.fluentquery.jpa.dao;
+
+public interface DAOListener {
+	
+	void onStatement(StatementEvent event);
+
+}
@@ -0,0 +1,65 @@
+package com.naskar.fluentquery.jpa.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.function.Function;
+
+public class Keyset<T> {
+	
+	private List<String> columns;
+	private List<Boolean> descending;
+	private List<Function<T, ?>> keys;
+	private String after;
+	
+	public Keyset() {
+		this.columns = new ArrayList<String>();
+		this.descending = new ArrayList<Boolean>();
+		this.keys = new ArrayList<Function<T, ?>>();
+	}
+	
+	public static <T> Keyset<T> of(Class<T> clazz) {
+		return new Keyset<T>();
+	}
+	
+	public Keyset<T> asc(String column, Function<T, ?> key) {
+		return add(column, false, key);
+	}
+	
+	public Keyset<T> desc(String column, Function<T, ?> key) {
+		return add(column, true, key);
+	}
+	
+	public Keyset<T> after(String token) {
+		this.after = token;
+		return this;
+	}
+	
+	private Keyset<T> add(String column, boolean desc, Function<T, ?> key) {
+		this.columns.add(column);
+		this.descending.add(desc);
+		this.keys.add(key);
+		return this;
+	}
+	
+	public List<String> getColumns() {
+		return Collections.unmodifiableList(columns);
+	}
+	
+	public boolean isDescending(int index) {
+		return descending.get(index);
+	}
+	
+	public String getAfter() {
+		return after;
+	}
+	
+	public List<Object> keysOf(T row) {
+		List<Object> values = new ArrayList<Object>(keys.size());
+		for(Function<T, ?> key : keys) {
+			values.add(key.apply(row));
+		}
+		return values;
+	}
+
+}
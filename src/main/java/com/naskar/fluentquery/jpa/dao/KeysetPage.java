@@ -0,0 +1,9 @@
+package com.naskar.fluentquery.jpa.dao;
+
+public interface KeysetPage<T> extends SubList<T> {
+	
+	String getNext();
+	
+	boolean hasNext();
+
+}
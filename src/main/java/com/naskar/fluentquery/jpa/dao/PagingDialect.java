@@ -0,0 +1,35 @@
+package com.naskar.fluentquery.jpa.dao;
+
+public enum PagingDialect {
+	
+	// offset ? rows fetch next ? rows only, postgresql, oracle 12c, db2, hsqldb, h2 and derby
+	OFFSET_FETCH,
+	
+	// limit ? offset ?
+	LIMIT_OFFSET,
+	
+	// the rows before the offset are read and skipped on the client, as eclipselink does for native queries
+	NONE;
+	
+	public static PagingDialect of(String databaseProductName, int majorVersion) {
+		String name = databaseProductName != null ? databaseProductName.toLowerCase() : "";
+		
+		if(name.contains("mysql") || name.contains("mariadb") || name.contains("sqlite")) {
+			return LIMIT_OFFSET;
+		}
+		
+		// oracle before 12c has no offset
+		if(name.contains("oracle")) {
+			return majorVersion >= 12 ? OFFSET_FETCH : NONE;
+		}
+		
+		if(name.contains("postgres") || name.contains("db2") || name.contains("hsql") 
+				|| name.contains("h2") || name.contains("derby")) {
+			return OFFSET_FETCH;
+		}
+		
+		// sql server requires an order by the statement may not have
+		return NONE;
+	}
+
+}
@@ -0,0 +1,118 @@
+package com.naskar.fluentquery.jpa.dao;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.persistence.config.HintValues;
+import org.eclipse.persistence.config.QueryHints;
+
+public class QueryOptions {
+	
+	private Integer fetchSize;
+	private Integer maxRows;
+	private Integer timeout;
+	private Boolean forwardOnly;
+	private Boolean adaptiveFetchSize;
+	private Map<String, Object> hints;
+	
+	public QueryOptions() {
+		this.hints = new LinkedHashMap<String, Object>();
+	}
+	
+	public static QueryOptions of() {
+		return new QueryOptions();
+	}
+	
+	// 0 leaves the choice to the DAO, which falls back to its own fetch size
+	public QueryOptions fetchSize(int fetchSize) {
+		if(fetchSize < 0) {
+			throw new IllegalArgumentException("fetchSize must not be negative: " + fetchSize);
+		}
+		this.fetchSize = fetchSize;
+		return this;
+	}
+	
+	public QueryOptions maxRows(int maxRows) {
+		if(maxRows < 0) {
+			throw new IllegalArgumentException("maxRows must not be negative: " + maxRows);
+		}
+		this.maxRows = maxRows;
+		return this;
+	}
+	
+	public QueryOptions timeout(int seconds) {
+		if(seconds < 0) {
+			throw new IllegalArgumentException("timeout must not be negative: " + seconds);
+		}
+		this.timeout = seconds;
+		return this;
+	}
+	
+	public QueryOptions forwardOnly(boolean forwardOnly) {
+		this.forwardOnly = forwardOnly;
+		return this;
+	}
+	
+	// the fetch size follows the row counts recently returned by the same statement
+	public QueryOptions adaptiveFetchSize() {
+		this.adaptiveFetchSize = true;
+		return this;
+	}
+	
+	public QueryOptions hint(String name, Object value) {
+		this.hints.put(name, value);
+		return this;
+	}
+	
+	public QueryOptions readOnly() {
+		return hint(QueryHints.READ_ONLY, HintValues.TRUE);
+	}
+	
+	public QueryOptions maintainCache(boolean maintain) {
+		return hint(QueryHints.MAINTAIN_CACHE, maintain ? HintValues.TRUE : HintValues.FALSE);
+	}
+	
+	public Integer getFetchSize() {
+		return fetchSize;
+	}
+	
+	public Integer getMaxRows() {
+		return maxRows;
+	}
+	
+	public Integer getTimeout() {
+		return timeout;
+	}
+	
+	public boolean isForwardOnly() {
+		return forwardOnly == null || forwardOnly;
+	}
+	
+	public boolean isAdaptiveFetchSize() {
+		return adaptiveFetchSize != null && adaptiveFetchSize;
+	}
+	
+	public Map<String, Object> getHints() {
+		return Collections.unmodifiableMap(hints);
+	}
+	
+	// the options set here win, the rest comes from the defaults
+	public QueryOptions orElse(QueryOptions defaults) {
+		if(defaults == null) {
+			return this;
+		}
+		
+		QueryOptions merged = new QueryOptions();
+		merged.fetchSize = fetchSize != null ? fetchSize : defaults.fetchSize;
+		merged.maxRows = maxRows != null ? maxRows : defaults.maxRows;
+		merged.timeout = timeout != null ? timeout : defaults.timeout;
+		merged.forwardOnly = forwardOnly != null ? forwardOnly : defaults.forwardOnly;
+		merged.adaptiveFetchSize = adaptiveFetchSize != null ? adaptiveFetchSize : defaults.adaptiveFetchSize;
+		merged.hints.putAll(defaults.hints);
+		merged.hints.putAll(hints);
+		
+		return merged;
+	}
+
+}
@@ -0,0 +1,31 @@
+package com.naskar.fluentquery.jpa.dao;
+
+import java.util.List;
+import java.util.Map;
+
+public interface ResultTable extends Iterable<Row> {
+	
+	// rows start at 0, as in java.util.List, columns at 1, as in java.sql.ResultSet
+	int getRowCount();
+	
+	int getColumnCount();
+	
+	String getColumnName(int column);
+	
+	int getColumnIndex(String name);
+	
+	Object get(int row, int column);
+	
+	Object get(int row, String column);
+	
+	long getLong(int row, int column);
+	
+	double getDouble(int row, int column);
+	
+	boolean isNull(int row, int column);
+	
+	Row getRow(int row);
+	
+	List<Map<String, Object>> toList();
+
+}
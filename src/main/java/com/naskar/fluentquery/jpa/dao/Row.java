@@ -0,0 +1,36 @@
+package com.naskar.fluentquery.jpa.dao;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Map;
+
+public interface Row extends Map<String, Object> {
+	
+	// indexes start at 1, as in java.sql.ResultSet
+	Object get(int index);
+	
+	int getColumnCount();
+	
+	String getColumnName(int index);
+	
+	Row copy();
+	
+	// binary columns are only readable inside the row callback
+	default long transferTo(String column, WritableByteChannel target) {
+		try {
+			return BinaryContent.transfer(get(column), target);
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	default long transferTo(String column, Path target) {
+		try {
+			return BinaryContent.transfer(get(column), target);
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+}
@@ -1,9 +1,14 @@
 package com.naskar.fluentquery.jpa.dao;
 
+import java.util.HashMap;
 import java.util.Map;
 
 public interface RowHandler {
 	
 	boolean execute(Map<String, Object> row);
+	
+	default boolean execute(Row row) {
+		return execute(new HashMap<String, Object>(row));
+	}
 
 }
@@ -0,0 +1,18 @@
+package com.naskar.fluentquery.jpa.dao;
+
+import java.util.Map;
+
+public interface RowViewHandler extends RowHandler {
+	
+	@Override
+	boolean execute(Row row);
+	
+	@Override
+	default boolean execute(Map<String, Object> row) {
+		if(row instanceof Row) {
+			return execute((Row)row);
+		}
+		throw new IllegalArgumentException("Row expected: " + row.getClass().getName());
+	}
+
+}
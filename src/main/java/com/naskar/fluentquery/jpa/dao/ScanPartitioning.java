@@ -0,0 +1,11 @@
+package com.naskar.fluentquery.jpa.dao;
+
+public enum ScanPartitioning {
+	
+	// contiguous ranges between the min and max of a numeric column
+	RANGE,
+	
+	// mod(column, partitions), for keys with gaps or skew
+	MODULO
+
+}
@@ -0,0 +1,14 @@
+package com.naskar.fluentquery.jpa.dao;
+
+import java.util.Set;
+
+public interface Snapshot<T> {
+	
+	Class<T> getClazz();
+	
+	// attribute values as loaded, keyed by the mapped attribute name
+	Object get(String attribute);
+	
+	Set<String> changed(T current);
+
+}
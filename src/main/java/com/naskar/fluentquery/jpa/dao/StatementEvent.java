@@ -0,0 +1,86 @@
+package com.naskar.fluentquery.jpa.dao;
+
+public class StatementEvent {
+	
+	public enum Type {
+		
+		QUERY,
+		
+		UPDATE,
+		
+		BATCH
+		
+	}
+	
+	private Type type;
+	private String sql;
+	private String fingerprint;
+	private int bindCount;
+	private long rows;
+	private long firstRowNanos;
+	private long totalNanos;
+	private long mappingNanos;
+	private Throwable error;
+	
+	public StatementEvent(Type type, String sql, String fingerprint, int bindCount, long rows, 
+			long firstRowNanos, long totalNanos, long mappingNanos, Throwable error) {
+		this.type = type;
+		this.sql = sql;
+		this.fingerprint = fingerprint;
+		this.bindCount = bindCount;
+		this.rows = rows;
+		this.firstRowNanos = firstRowNanos;
+		this.totalNanos = totalNanos;
+		this.mappingNanos = mappingNanos;
+		this.error = error;
+	}
+	
+	public Type getType() {
+		return type;
+	}
+	
+	public String getSql() {
+		return sql;
+	}
+	
+	public String getFingerprint() {
+		return fingerprint;
+	}
+	
+	public int getBindCount() {
+		return bindCount;
+	}
+	
+	// rows read by queries, rows affected by updates and batches
+	public long getRows() {
+		return rows;
+	}
+	
+	// -1 when the rows are read by EclipseLink
+	public long getFirstRowNanos() {
+		return firstRowNanos;
+	}
+	
+	public long getTotalNanos() {
+		return totalNanos;
+	}
+	
+	public long getMappingNanos() {
+		return mappingNanos;
+	}
+	
+	public Throwable getError() {
+		return error;
+	}
+	
+	public boolean isFailed() {
+		return error != null;
+	}
+	
+	@Override
+	public String toString() {
+		return type + " " + (totalNanos / 1000000) + "ms rows=" + rows + " binds=" + bindCount + 
+				(error != null ? " error=" + error : "") + " sql=" + sql;
+	}
+
+}
@@ -11,5 +11,7 @@ public interface SubList<T> extends List<T> {
 	Long getMax();
 
 	Long getCount();
+	
+	CountType getCountType();
 
 }
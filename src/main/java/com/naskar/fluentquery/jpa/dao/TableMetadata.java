@@ -0,0 +1,49 @@
+package com.naskar.fluentquery.jpa.dao;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+public class TableMetadata {
+	
+	private String name;
+	private List<ColumnMetadata> columns;
+	private List<String> columnNames;
+	private List<String> primaryKey;
+	
+	public TableMetadata(String name, List<ColumnMetadata> columns, List<String> primaryKey) {
+		this.name = name;
+		this.columns = Collections.unmodifiableList(new ArrayList<ColumnMetadata>(columns));
+		this.primaryKey = Collections.unmodifiableList(new ArrayList<String>(primaryKey));
+		
+		List<String> names = new ArrayList<String>(columns.size());
+		columns.forEach(c -> names.add(c.getName()));
+		this.columnNames = Collections.unmodifiableList(names);
+	}
+	
+	public String getName() {
+		return name;
+	}
+	
+	public List<ColumnMetadata> getColumns() {
+		return columns;
+	}
+	
+	public List<String> getColumnNames() {
+		return columnNames;
+	}
+	
+	public List<String> getPrimaryKey() {
+		return primaryKey;
+	}
+	
+	public ColumnMetadata getColumn(String name) {
+		for(ColumnMetadata c : columns) {
+			if(c.getName().equalsIgnoreCase(name)) {
+				return c;
+			}
+		}
+		return null;
+	}
+
+}
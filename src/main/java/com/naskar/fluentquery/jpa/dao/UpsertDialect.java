@@ -0,0 +1,42 @@
+package com.naskar.fluentquery.jpa.dao;
+
+public enum UpsertDialect {
+	
+	// insert ... on conflict (keys) do update
+	POSTGRESQL,
+	
+	// insert ... on duplicate key update
+	MYSQL,
+	
+	// merge into ... using (values ...), hsqldb, h2 and db2
+	MERGE,
+	
+	// merge terminated by a semicolon
+	SQLSERVER,
+	
+	// merge into ... using (select ... from dual)
+	ORACLE;
+	
+	public static UpsertDialect of(String databaseProductName) {
+		String name = databaseProductName != null ? databaseProductName.toLowerCase() : "";
+		
+		if(name.contains("postgres")) {
+			return POSTGRESQL;
+		}
+		
+		if(name.contains("mysql") || name.contains("mariadb")) {
+			return MYSQL;
+		}
+		
+		if(name.contains("microsoft") || name.contains("sql server")) {
+			return SQLSERVER;
+		}
+		
+		if(name.contains("oracle")) {
+			return ORACLE;
+		}
+		
+		return MERGE;
+	}
+
+}
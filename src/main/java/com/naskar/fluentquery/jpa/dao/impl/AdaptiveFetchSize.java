@@ -0,0 +1,51 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+public class AdaptiveFetchSize {
+
+	private static final double WEIGHT = 0.25;
+
+	private LRUCache<String, Average> averages;
+	private int min;
+	private int max;
+
+	public AdaptiveFetchSize(int maxStatements, int min, int max) {
+		this.averages = new LRUCache<String, Average>(maxStatements);
+		this.min = min;
+		this.max = max;
+	}
+
+	// null until the statement has run once
+	public Integer get(String sql) {
+		Average average = averages.get(SQLFingerprint.of(sql));
+		if(average == null) {
+			return null;
+		}
+		// one round trip for the usual result, plus the call that sees the end
+		long rows = (long)Math.ceil(average.value) + 1;
+		return (int)Math.max(min, Math.min(max, rows));
+	}
+
+	public void record(String sql, long rows) {
+		averages.get(SQLFingerprint.of(sql), k -> new Average(rows)).add(rows);
+	}
+
+	public LRUCache<String, ?> getAverages() {
+		return averages;
+	}
+
+	private static class Average {
+
+		// races between updates only lose a sample
+		private volatile double value;
+
+		Average(long rows) {
+			this.value = rows;
+		}
+
+		void add(long rows) {
+			value = value + WEIGHT * (rows - value);
+		}
+
+	}
+
+}
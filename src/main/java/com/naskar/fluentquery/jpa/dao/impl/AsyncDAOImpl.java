@@ -0,0 +1,119 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
+
+import com.naskar.fluentquery.Query;
+import com.naskar.fluentquery.jpa.EntityManagerScope;
+import com.naskar.fluentquery.jpa.dao.AsyncDAO;
+import com.naskar.fluentquery.jpa.dao.DAO;
+
+public class AsyncDAOImpl implements AsyncDAO {
+
+	private DAO dao;
+	private EntityManagerScope scope;
+	private ExecutorService executor;
+	private Semaphore connections;
+	private boolean ownExecutor;
+
+	public AsyncDAOImpl(DAO dao, EntityManagerScope scope, int maxConnections) {
+		this(dao, scope, newExecutor(maxConnections), maxConnections);
+		this.ownExecutor = true;
+	}
+
+	public AsyncDAOImpl(DAO dao, EntityManagerScope scope, ExecutorService executor, int maxConnections) {
+		if(maxConnections < 1) {
+			throw new IllegalArgumentException("maxConnections must be greater than zero: " + maxConnections);
+		}
+
+		this.dao = dao;
+		this.scope = scope;
+		this.executor = executor;
+		this.connections = new Semaphore(maxConnections, true);
+	}
+
+	public static ExecutorService newExecutor(int maxConnections) {
+		// virtual threads when running on 21+, the semaphore bounds the connections in use
+		try {
+			Method m = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)m.invoke(null);
+
+		} catch(Exception e) {
+			return Executors.newFixedThreadPool(maxConnections, r -> {
+				Thread t = new Thread(r, "fluent-query-async");
+				t.setDaemon(true);
+				return t;
+			});
+		}
+	}
+
+	@Override
+	public <R> CompletableFuture<R> submit(Function<DAO, R> task) {
+		return CompletableFuture.supplyAsync(() -> {
+			try {
+				connections.acquire();
+			} catch(InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new CompletionException(e);
+			}
+
+			try {
+				// each task gets its own EntityManager and transaction on the executing thread
+				return scope.execute(() -> task.apply(dao));
+
+			} catch(RuntimeException e) {
+				throw e;
+
+			} catch(Exception e) {
+				throw new CompletionException(e);
+
+			} finally {
+				connections.release();
+			}
+		}, executor);
+	}
+
+	@Override
+	public <T> CompletableFuture<List<T>> list(Query<T> query) {
+		return submit(d -> d.list(query));
+	}
+
+	@Override
+	public <T> CompletableFuture<List<T>> list(Query<T> query, Long first, Long max) {
+		return submit(d -> d.list(query, first, max));
+	}
+
+	@Override
+	public <T, R> CompletableFuture<List<R>> list(Query<T> query, Class<R> clazzR) {
+		return submit(d -> d.list(query, clazzR));
+	}
+
+	@Override
+	public CompletableFuture<List<Map<String, Object>>> list(String sql, List<Object> params, Long first, Long max) {
+		return submit(d -> d.list(sql, params, first, max));
+	}
+
+	@Override
+	public <T> CompletableFuture<T> single(Query<T> query) {
+		return submit(d -> d.single(query));
+	}
+
+	public int getAvailableConnections() {
+		return connections.availablePermits();
+	}
+
+	@Override
+	public void close() {
+		if(ownExecutor) {
+			executor.shutdown();
+		}
+	}
+
+}
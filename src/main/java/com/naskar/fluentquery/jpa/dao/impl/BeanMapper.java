@@ -0,0 +1,221 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import com.naskar.fluentquery.jpa.dao.Row;
+import com.naskar.fluentquery.jpa.dao.RowViewHandler;
+
+class BeanMapper<R> {
+
+	private static final MethodType SETTER_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+	private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class);
+
+	private final Class<R> clazz;
+	private final MethodHandle constructor;
+	private final Map<String, Property> properties;
+
+	BeanMapper(Class<R> clazz) {
+		this.clazz = clazz;
+		this.properties = new HashMap<String, Property>();
+
+		try {
+			MethodHandles.Lookup lookup = MethodHandles.lookup();
+
+			Constructor<R> c = clazz.getDeclaredConstructor();
+			c.setAccessible(true);
+			this.constructor = lookup.unreflectConstructor(c).asType(CONSTRUCTOR_TYPE);
+
+			// subclass fields hide the inherited ones with the same name
+			for(Class<?> k = clazz; k != null && k != Object.class; k = k.getSuperclass()) {
+				for(Field f : k.getDeclaredFields()) {
+					if(Modifier.isStatic(f.getModifiers())) {
+						continue;
+					}
+
+					String name = f.getName().toLowerCase();
+					if(!properties.containsKey(name)) {
+						properties.put(name, new Property(f.getName(), f.getType(), setterOf(lookup, f)));
+					}
+				}
+			}
+
+		} catch(Exception e) {
+			throw new RuntimeException("Cannot map class: " + clazz.getName(), e);
+		}
+	}
+
+	private static MethodHandle setterOf(MethodHandles.Lookup lookup, Field f) throws IllegalAccessException {
+		String name = "set" + Character.toUpperCase(f.getName().charAt(0)) + f.getName().substring(1);
+
+		MethodHandle setter;
+		try {
+			Method m = f.getDeclaringClass().getMethod(name, f.getType());
+			setter = lookup.unreflect(m);
+
+		} catch(NoSuchMethodException e) {
+			if(Modifier.isFinal(f.getModifiers())) {
+				return null;
+			}
+			f.setAccessible(true);
+			setter = lookup.unreflectSetter(f);
+		}
+
+		return setter.asType(SETTER_TYPE);
+	}
+
+	RowViewHandler handler(Consumer<R> consumer) {
+		return new RowViewHandler() {
+
+			private Binding[] bindings;
+
+			@Override
+			public boolean execute(Row row) {
+				if(bindings == null) {
+					bindings = bind(row);
+				}
+
+				consumer.accept(map(bindings, row));
+
+				return true;
+			}
+		};
+	}
+
+	private Binding[] bind(Row row) {
+		Binding[] bindings = new Binding[row.getColumnCount()];
+
+		for(int j = 1; j <= bindings.length; j++) {
+			String column = row.getColumnName(j);
+			Property p = properties.get(column.toLowerCase());
+			if(p != null && p.setter != null) {
+				bindings[j - 1] = new Binding(column, p, coercionOf(p.type));
+			}
+		}
+
+		return bindings;
+	}
+
+	private R map(Binding[] bindings, Row row) {
+		R r = newInstance();
+
+		for(int i = 0; i < bindings.length; i++) {
+			Binding b = bindings[i];
+			if(b == null) {
+				continue;
+			}
+
+			Object value = row.get(i + 1);
+			try {
+				if(value == null) {
+					if(b.property.type.isPrimitive()) {
+						continue;
+					}
+				} else {
+					value = b.coercion.apply(value);
+				}
+
+				b.property.setter.invokeExact((Object)r, value);
+
+			} catch(Error e) {
+				throw e;
+
+			} catch(Throwable e) {
+				// a value the coercion left as is reaches the setter with the wrong type
+				throw new RuntimeException("Cannot map column " + b.column 
+						+ (value != null ? " of type " + value.getClass().getName() : "")
+						+ " to property " + b.property.name + " of type " + b.property.type.getName() 
+						+ " in " + clazz.getName(), e);
+			}
+		}
+
+		return r;
+	}
+
+	@SuppressWarnings("unchecked")
+	private R newInstance() {
+		try {
+			return (R)constructor.invokeExact();
+
+		} catch(RuntimeException | Error e) {
+			throw e;
+
+		} catch(Throwable e) {
+			throw new RuntimeException("Cannot create " + clazz.getName(), e);
+		}
+	}
+
+	private static Function<Object, Object> coercionOf(Class<?> type) {
+		if(type == int.class || type == Integer.class) {
+			return v -> v instanceof Number ? ((Number)v).intValue() : v;
+		}
+		if(type == long.class || type == Long.class) {
+			return v -> v instanceof Number ? ((Number)v).longValue() : v;
+		}
+		if(type == short.class || type == Short.class) {
+			return v -> v instanceof Number ? ((Number)v).shortValue() : v;
+		}
+		if(type == byte.class || type == Byte.class) {
+			return v -> v instanceof Number ? ((Number)v).byteValue() : v;
+		}
+		if(type == double.class || type == Double.class) {
+			return v -> v instanceof Number ? ((Number)v).doubleValue() : v;
+		}
+		if(type == float.class || type == Float.class) {
+			return v -> v instanceof Number ? ((Number)v).floatValue() : v;
+		}
+		if(type == boolean.class || type == Boolean.class) {
+			return v -> v instanceof Number ? ((Number)v).intValue() != 0 : v;
+		}
+		if(type == BigDecimal.class) {
+			return v -> v instanceof Number && !(v instanceof BigDecimal) ? new BigDecimal(v.toString()) : v;
+		}
+		if(type == BigInteger.class) {
+			return v -> v instanceof Number && !(v instanceof BigInteger) ? new BigDecimal(v.toString()).toBigInteger() : v;
+		}
+		if(type == String.class) {
+			return v -> v instanceof Number || v instanceof Character ? v.toString() : v;
+		}
+		return v -> v;
+	}
+
+	private static class Property {
+
+		private final String name;
+		private final Class<?> type;
+		private final MethodHandle setter;
+
+		Property(String name, Class<?> type, MethodHandle setter) {
+			this.name = name;
+			this.type = type;
+			this.setter = setter;
+		}
+
+	}
+
+	private static class Binding {
+
+		private final String column;
+		private final Property property;
+		private final Function<Object, Object> coercion;
+
+		Binding(String column, Property property, Function<Object, Object> coercion) {
+			this.column = column;
+			this.property = property;
+			this.coercion = coercion;
+		}
+
+	}
+
+}
@@ -0,0 +1,143 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+public class ConcurrentCache<K, V> {
+
+	// entries compared when the cache is full, the least recently used of them is evicted
+	private static final int EVICTION_SAMPLES = 8;
+
+	private final int maxSize;
+	private final Map<K, Node<V>> map;
+
+	private final LongAdder hits;
+	private final LongAdder misses;
+	private final LongAdder evictions;
+
+	public ConcurrentCache(int maxSize) {
+		if(maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be greater than zero: " + maxSize);
+		}
+
+		this.maxSize = maxSize;
+		this.map = new ConcurrentHashMap<K, Node<V>>();
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+		this.evictions = new LongAdder();
+	}
+
+	// reads take no lock, only the entry's own access time is written
+	public V get(K key) {
+		Node<V> node = map.get(key);
+		if(node == null) {
+			misses.increment();
+			return null;
+		}
+
+		node.used = System.nanoTime();
+		hits.increment();
+		return node.value;
+	}
+
+	public V get(K key, Function<K, V> loader) {
+		V value = get(key);
+
+		if(value == null) {
+			// concurrent misses may load twice
+			value = loader.apply(key);
+			if(value != null) {
+				put(key, value);
+			}
+		}
+
+		return value;
+	}
+
+	public void put(K key, V value) {
+		map.put(key, new Node<V>(value, System.nanoTime()));
+
+		// concurrent puts may overshoot for a moment, each one trims back to the bound
+		while(map.size() > maxSize) {
+			evictOne();
+		}
+	}
+
+	public V remove(K key) {
+		Node<V> old = map.remove(key);
+		return old != null ? old.value : null;
+	}
+
+	public void clear() {
+		map.clear();
+	}
+
+	public int size() {
+		return map.size();
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getHits() {
+		return hits.sum();
+	}
+
+	public long getMisses() {
+		return misses.sum();
+	}
+
+	public long getEvictions() {
+		return evictions.sum();
+	}
+
+	public double getHitRatio() {
+		long h = hits.sum();
+		long total = h + misses.sum();
+		return total == 0 ? 0.0 : (double)h / total;
+	}
+
+	// the samples start at a random position, so no part of the table is favoured
+	private void evictOne() {
+		int skip = ThreadLocalRandom.current().nextInt(Math.max(1, map.size() - EVICTION_SAMPLES + 1));
+
+		K eldestKey = null;
+		Node<V> eldest = null;
+		int sampled = 0;
+
+		for(Map.Entry<K, Node<V>> e : map.entrySet()) {
+			if(skip > 0) {
+				skip--;
+				continue;
+			}
+			if(eldest == null || e.getValue().used < eldest.used) {
+				eldestKey = e.getKey();
+				eldest = e.getValue();
+			}
+			if(++sampled >= EVICTION_SAMPLES) {
+				break;
+			}
+		}
+
+		if(eldest != null && map.remove(eldestKey, eldest)) {
+			evictions.increment();
+		}
+	}
+
+	private static class Node<V> {
+
+		private final V value;
+		private volatile long used;
+
+		Node(V value, long used) {
+			this.value = value;
+			this.used = used;
+		}
+
+	}
+
+}
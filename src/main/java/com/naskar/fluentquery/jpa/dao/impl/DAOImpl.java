@@ -1,32 +1,64 @@
 package com.naskar.fluentquery.jpa.dao.impl;
 
 import java.io.File;
-import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.RoundingMode;
+import java.nio.file.Files;
 import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
-import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
+import javax.persistence.Cache;
 import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
 import javax.persistence.NoResultException;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.Table;
 
+import org.eclipse.persistence.config.HintValues;
 import org.eclipse.persistence.config.QueryHints;
 import org.eclipse.persistence.config.ResultType;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.queries.CursoredStream;
+import org.eclipse.persistence.sessions.IdentityMapAccessor;
+import org.eclipse.persistence.sessions.UnitOfWork;
 
 import com.naskar.fluentquery.Delete;
 import com.naskar.fluentquery.DeleteBuilder;
@@ -44,11 +76,29 @@ import com.naskar.fluentquery.converters.NativeSQLInsertInto;
 import com.naskar.fluentquery.converters.NativeSQLResult;
 import com.naskar.fluentquery.converters.NativeSQLUpdate;
 import com.naskar.fluentquery.impl.Convention;
+import com.naskar.fluentquery.jpa.SharedEntityManager;
+import com.naskar.fluentquery.jpa.dao.BinaryContent;
+import com.naskar.fluentquery.jpa.dao.CountStrategy;
+import com.naskar.fluentquery.jpa.dao.CountType;
 import com.naskar.fluentquery.jpa.dao.DAO;
+import com.naskar.fluentquery.jpa.dao.DAOListener;
+import com.naskar.fluentquery.jpa.dao.Keyset;
+import com.naskar.fluentquery.jpa.dao.KeysetPage;
+import com.naskar.fluentquery.jpa.dao.QueryOptions;
+import com.naskar.fluentquery.jpa.dao.ResultTable;
+import com.naskar.fluentquery.jpa.dao.Row;
 import com.naskar.fluentquery.jpa.dao.RowHandler;
+import com.naskar.fluentquery.jpa.dao.ScanPartitioning;
+import com.naskar.fluentquery.jpa.dao.Snapshot;
+import com.naskar.fluentquery.jpa.dao.StatementEvent;
+import com.naskar.fluentquery.jpa.dao.TableMetadata;
+import com.naskar.fluentquery.jpa.dao.PagingDialect;
+import com.naskar.fluentquery.jpa.dao.UpsertDialect;
 
 public class DAOImpl implements DAO {
 
+	private static final Logger logger = Logger.getLogger(DAOImpl.class.getName());
+	
 	private EntityManager em;
 	
 	private NativeSQL nativeSQL;
@@ -65,9 +115,63 @@ public class DAOImpl implements DAO {
 	
 	private BinderSQLBuilder binderBuilder;
 	
-	private static final List<Integer> BINARY_TYPES = Arrays.asList(
-		Types.BINARY, Types.LONGVARBINARY, Types.VARBINARY
-	);
+	private ConcurrentCache<String, RenderedSQL> sqlCache;
+	private ConcurrentMap<Class<?>, BeanMapper<?>> mappers;
+	
+	private CountStrategy countStrategy;
+	private LRUCache<List<Object>, Long> countCache;
+	private ExecutorService countExecutor;
+	private ExecutorService scanExecutor;
+	private List<ExecutorService> ownedExecutors;
+	
+	private MetadataCache metadataCache;
+	
+	private ResultCache resultCache;
+	private ConcurrentMap<Class<?>, String> entityTables;
+	private ConcurrentMap<Class<?>, EntityMapping> entityMappings;
+	
+	private int batchSize;
+	private int fetchSize;
+	
+	private QueryOptions defaultOptions;
+	private AdaptiveFetchSize adaptiveFetchSize;
+	
+	// insert, delete and upsert statements rendered by the dao
+	private LRUCache<TemplateKey, String> templateCache;
+	private int insertMaxParams;
+	private int deleteChunkSize;
+	private UpsertDialect upsertDialect;
+	private PagingDialect pagingDialect;
+	
+	private int statementCacheSize;
+	private ThreadLocal<StatementCache> statementCache;
+	private ThreadLocal<List<InputStream>> openedStreams;
+	
+	private List<DAOListener> listeners;
+	
+	private boolean deferFlush;
+	private int autoFlushThreshold;
+	private boolean clearOnAutoFlush;
+	private ThreadLocal<PendingWrites> pendingWrites;
+	
+	private static final int DEFAULT_SQL_CACHE_SIZE = 1024;
+	private static final int DEFAULT_STATEMENT_CACHE_SIZE = 64;
+	private static final int DEFAULT_BATCH_SIZE = 500;
+	private static final int DEFAULT_FETCH_SIZE = 500;
+	private static final int DEFAULT_ADAPTIVE_STATEMENTS = 1024;
+	private static final int MIN_ADAPTIVE_FETCH_SIZE = 10;
+	private static final int MAX_ADAPTIVE_FETCH_SIZE = 10000;
+	private static final int DEFAULT_COUNT_CACHE_SIZE = 1024;
+	private static final int DEFAULT_METADATA_CACHE_SIZE = 4096;
+	private static final int DEFAULT_TEMPLATE_CACHE_SIZE = 256;
+	private static final int DEFAULT_DELETE_CHUNK_SIZE = 1000;
+	private static final int DEFAULT_AUTO_FLUSH_THRESHOLD = 1000;
+	private static final int MAX_TABLE_CAPACITY = 65536;
+	
+	private static final String WINDOW_COUNT = "fq_total";
+	
+	private static final Object END_OF_PARTITION = new Object();
+	private static final long SCAN_POLL_MILLIS = 50L;
 	
 	public DAOImpl() {
 		this.nativeSQL = new NativeSQL();
@@ -83,10 +187,57 @@ public class DAOImpl implements DAO {
 		this.deleteBuilder = new DeleteBuilder();
 		
 		this.binderBuilder = new BinderSQLBuilder();
+		
+		this.sqlCache = new ConcurrentCache<String, RenderedSQL>(DEFAULT_SQL_CACHE_SIZE);
+		this.mappers = new ConcurrentHashMap<Class<?>, BeanMapper<?>>();
+		
+		this.countStrategy = CountStrategy.exact();
+		this.countCache = new LRUCache<List<Object>, Long>(DEFAULT_COUNT_CACHE_SIZE);
+		this.ownedExecutors = new ArrayList<ExecutorService>();
+		
+		this.metadataCache = new MetadataCache(DEFAULT_METADATA_CACHE_SIZE, 0L);
+		this.entityTables = new ConcurrentHashMap<Class<?>, String>();
+		this.entityMappings = new ConcurrentHashMap<Class<?>, EntityMapping>();
+		
+		this.batchSize = DEFAULT_BATCH_SIZE;
+		this.fetchSize = DEFAULT_FETCH_SIZE;
+		
+		this.adaptiveFetchSize = new AdaptiveFetchSize(DEFAULT_ADAPTIVE_STATEMENTS, 
+				MIN_ADAPTIVE_FETCH_SIZE, MAX_ADAPTIVE_FETCH_SIZE);
+		
+		this.templateCache = new LRUCache<TemplateKey, String>(DEFAULT_TEMPLATE_CACHE_SIZE);
+		this.insertMaxParams = 0;
+		this.deleteChunkSize = DEFAULT_DELETE_CHUNK_SIZE;
+		
+		this.statementCacheSize = DEFAULT_STATEMENT_CACHE_SIZE;
+		this.statementCache = new ThreadLocal<StatementCache>();
+		this.openedStreams = new ThreadLocal<List<InputStream>>();
+		
+		this.listeners = new CopyOnWriteArrayList<DAOListener>();
+		
+		this.deferFlush = false;
+		this.autoFlushThreshold = DEFAULT_AUTO_FLUSH_THRESHOLD;
+		this.clearOnAutoFlush = false;
+		this.pendingWrites = new ThreadLocal<PendingWrites>();
 	}
 	
 	public void setEm(EntityManager em) {
 		this.em = em;
+		
+		if(resultCache != null) {
+			resultCache.setTransactional(em instanceof SharedEntityManager);
+		}
+		
+		if(em instanceof SharedEntityManager) {
+			((SharedEntityManager)em).addCloseListener(e -> {
+				closeStatements();
+				pendingWrites.remove();
+				
+				if(resultCache != null) {
+					resultCache.completed();
+				}
+			});
+		}
 	}
 	
 	protected EntityManager getEm() {
@@ -98,29 +249,523 @@ public class DAOImpl implements DAO {
 		this.insertSQL.setConvention(convention);
 		this.updateSQL.setConvention(convention);
 		this.deleteSQL.setConvention(convention);
+		this.sqlCache.clear();
+	}
+	
+	public void setSqlCacheSize(int size) {
+		this.sqlCache = new ConcurrentCache<String, RenderedSQL>(size);
+	}
+	
+	public ConcurrentCache<String, ?> getSqlCache() {
+		return sqlCache;
+	}
+	
+	// caches of other threads are replaced on their next statement
+	public void setStatementCacheSize(int size) {
+		closeStatements();
+		this.statementCacheSize = size;
+	}
+	
+	public void setBatchSize(int batchSize) {
+		if(batchSize < 1) {
+			throw new IllegalArgumentException("batchSize must be greater than zero: " + batchSize);
+		}
+		this.batchSize = batchSize;
+	}
+	
+	// greater than zero switches insertAll to multi-row values statements of up to maxParams parameters
+	public void setInsertMaxParams(int maxParams) {
+		this.insertMaxParams = maxParams;
+	}
+	
+	// ids per delete statement, oracle accepts up to 1000 values in a list
+	public void setDeleteChunkSize(int deleteChunkSize) {
+		if(deleteChunkSize < 1) {
+			throw new IllegalArgumentException("deleteChunkSize must be greater than zero: " + deleteChunkSize);
+		}
+		this.deleteChunkSize = deleteChunkSize;
+	}
+	
+	// detected from the connection metadata when not set
+	public void setUpsertDialect(UpsertDialect upsertDialect) {
+		this.upsertDialect = upsertDialect;
+	}
+	
+	// renders the offset of table(), detected from the connection metadata when not set
+	public void setPagingDialect(PagingDialect pagingDialect) {
+		this.pagingDialect = pagingDialect;
+	}
+	
+	public void setFetchSize(int fetchSize) {
+		if(fetchSize < 1) {
+			throw new IllegalArgumentException("fetchSize must be greater than zero: " + fetchSize);
+		}
+		this.fetchSize = fetchSize;
+	}
+	
+	// applied to every read, options passed to a call override them
+	public void setDefaultOptions(QueryOptions defaultOptions) {
+		this.defaultOptions = defaultOptions;
+	}
+	
+	public QueryOptions getDefaultOptions() {
+		return defaultOptions;
+	}
+	
+	public AdaptiveFetchSize getAdaptiveFetchSize() {
+		return adaptiveFetchSize;
+	}
+	
+	public void setCountStrategy(CountStrategy countStrategy) {
+		this.countStrategy = countStrategy;
+	}
+	
+	public LRUCache<List<Object>, Long> getCountCache() {
+		return countCache;
+	}
+	
+	public void setCountExecutor(ExecutorService countExecutor) {
+		this.countExecutor = countExecutor;
+	}
+	
+	private synchronized ExecutorService getCountExecutor() {
+		if(countExecutor == null) {
+			countExecutor = Executors.newFixedThreadPool(
+				Runtime.getRuntime().availableProcessors(), r -> {
+					Thread t = new Thread(r, "fluent-query-count");
+					t.setDaemon(true);
+					return t;
+				});
+			ownedExecutors.add(countExecutor);
+		}
+		return countExecutor;
+	}
+	
+	public void setScanExecutor(ExecutorService scanExecutor) {
+		this.scanExecutor = scanExecutor;
+	}
+	
+	private synchronized ExecutorService getScanExecutor() {
+		if(scanExecutor == null) {
+			scanExecutor = Executors.newCachedThreadPool(r -> {
+				Thread t = new Thread(r, "fluent-query-scan");
+				t.setDaemon(true);
+				return t;
+			});
+			ownedExecutors.add(scanExecutor);
+		}
+		return scanExecutor;
+	}
+	
+	// shuts down the pools the DAO started, executors set from outside belong to the caller
+	public synchronized void close() {
+		for(ExecutorService executor : ownedExecutors) {
+			executor.shutdownNow();
+			if(executor == countExecutor) {
+				countExecutor = null;
+			}
+			if(executor == scanExecutor) {
+				scanExecutor = null;
+			}
+		}
+		ownedExecutors.clear();
+	}
+	
+	public void setMetadataTtl(long ttlMillis) {
+		this.metadataCache = new MetadataCache(DEFAULT_METADATA_CACHE_SIZE, ttlMillis);
+	}
+	
+	public MetadataCache getMetadataCache() {
+		return metadataCache;
+	}
+	
+	// caches list(Query) and single(Query) results until a write through this DAO touches one of their tables
+	public void setResultCache(int maxSize, long ttlMillis) {
+		this.resultCache = maxSize > 0 ? new ResultCache(maxSize, ttlMillis) : null;
+		
+		if(resultCache != null) {
+			resultCache.setTransactional(em instanceof SharedEntityManager);
+		}
+	}
+	
+	public ResultCache getResultCache() {
+		return resultCache;
+	}
+	
+	private void written(String sql) {
+		markWritten();
+		if(resultCache != null) {
+			resultCache.written(sql);
+		}
+	}
+	
+	private void writtenTable(String table) {
+		markWritten();
+		if(resultCache != null) {
+			resultCache.invalidate(table);
+		}
+	}
+	
+	private void writtenEntity(Object o) {
+		markWritten();
+		if(resultCache != null) {
+			resultCache.invalidate(tableOf(o.getClass()));
+		}
+	}
+	
+	private String tableOf(Class<?> clazz) {
+		return entityTables.computeIfAbsent(clazz, c -> {
+			try {
+				ClassDescriptor descriptor = em.unwrap(JpaEntityManager.class)
+						.getServerSession().getClassDescriptor(c);
+				if(descriptor != null && descriptor.getTableName() != null) {
+					return descriptor.getTableName();
+				}
+			} catch(RuntimeException e) {
+				// not running on EclipseLink, falls back to the mapping
+			}
+			
+			Table table = c.getAnnotation(Table.class);
+			if(table != null && !table.name().isEmpty()) {
+				return table.name();
+			}
+			
+			return c.getSimpleName();
+		});
+	}
+	
+	// keeps replica reads on the primary for the read-your-writes window
+	private void markWritten() {
+		if(em instanceof SharedEntityManager) {
+			((SharedEntityManager)em).markWritten();
+		}
+	}
+	
+	// reads of tables this transaction wrote must see the uncommitted rows, they are not cached,
+	// nor are replica reads, a lagging replica would refill the cache with the rows just invalidated
+	private boolean isCacheable(String sql) {
+		return resultCache != null && !resultCache.isPending(sql) && 
+				!(em instanceof SharedEntityManager && ((SharedEntityManager)em).isReplica());
+	}
+	
+	// cached results are loaded apart from the caller's persistence context, 
+	// they hold committed rows only and are detached when the EntityManager closes
+	private <R> R detached(Function<EntityManager, R> loader) {
+		EntityManager detached = em.getEntityManagerFactory().createEntityManager();
+		try {
+			return loader.apply(detached);
+		} finally {
+			detached.close();
+		}
+	}
+	
+	private <T> List<T> readOnly(List<T> l) {
+		if(l instanceof SubListImpl) {
+			SubListImpl<T> s = (SubListImpl<T>)l;
+			return new SubListImpl<T>(Collections.unmodifiableList(s.getDelegate()), 
+					s.getFirst(), s.getMax(), s.getCount(), s.getCountType());
+		}
+		return Collections.unmodifiableList(l);
+	}
+	
+	// writes are flushed on commit or flush() instead of one by one
+	public void setDeferFlush(boolean deferFlush) {
+		this.deferFlush = deferFlush;
+	}
+	
+	// deferred writes are flushed every threshold writes, 0 disables
+	public void setAutoFlushThreshold(int autoFlushThreshold) {
+		this.autoFlushThreshold = autoFlushThreshold;
+	}
+	
+	// also clears the persistence context on auto flush to bound its memory,
+	// every managed entity becomes detached and later changes to them are not written
+	public void setClearOnAutoFlush(boolean clearOnAutoFlush) {
+		this.clearOnAutoFlush = clearOnAutoFlush;
+	}
+	
+	public void addListener(DAOListener listener) {
+		listeners.add(listener);
+	}
+	
+	public void removeListener(DAOListener listener) {
+		listeners.remove(listener);
+	}
+	
+	// no timing is taken while nobody listens
+	private StatementTimer timer(StatementEvent.Type type, String sql, List<Object> params) {
+		if(listeners.isEmpty()) {
+			return null;
+		}
+		return new StatementTimer(type, sql, params != null ? params.size() : 0);
+	}
+	
+	private void fire(StatementTimer timer, Throwable error) {
+		if(timer == null) {
+			return;
+		}
+		
+		StatementEvent event = timer.finish(error);
+		for(DAOListener listener : listeners) {
+			try {
+				listener.onStatement(event);
+			} catch(RuntimeException e) {
+				logger.log(Level.WARNING, "Listener failed: " + listener, e);
+			}
+		}
+	}
+	
+	private void logError(String sql, List<Object> params, Exception e) {
+		logger.log(Level.SEVERE, "SQL:" + sql + " params: " + params, e);
+	}
+	
+	public void closeStatements() {
+		StatementCache cache = statementCache.get();
+		if(cache != null) {
+			statementCache.remove();
+			cache.close();
+		}
 	}
 	
 	@Override
 	public <T> T insert(T o) {
 		em.persist(o);
-		em.flush();
+		writtenEntity(o);
+		written();
 		return o;
 	}
 	
 	@Override
 	public <T> T update(T o) {
 		T no = em.merge(o);
-		em.flush();
+		writtenEntity(o);
+		written();
 		return no;
 	}
 	
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> Snapshot<T> snapshot(T o) {
+		Class<T> clazz = (Class<T>)o.getClass();
+		EntityMapping mapping = mappingOf(clazz);
+		return new SnapshotImpl<T>(clazz, mapping, mapping.snapshot(o));
+	}
+	
+	@Override
+	public <T> int update(T o, Snapshot<T> snapshot) {
+		SnapshotImpl<T> loaded = (SnapshotImpl<T>)snapshot;
+		EntityMapping mapping = loaded.getMapping();
+		
+		Map<String, Object> params = mapping.changedColumns(o, loaded.getValues());
+		if(params.isEmpty()) {
+			return 0;
+		}
+		
+		// keys without a column of their own are written by the persistence context
+		if(!mapping.isDirect()) {
+			update(o);
+			return 1;
+		}
+		
+		if(em.contains(o)) {
+			throw new IllegalArgumentException("Managed entities are written by the persistence context: " + o);
+		}
+		
+		Object id = em.getEntityManagerFactory().getPersistenceUnitUtil().getIdentifier(o);
+		flushManaged(mapping, Collections.singletonList(id));
+		
+		Map<String, Object> where = mapping.keyColumns(o);
+		
+		Object version = null;
+		if(mapping.isVersioned()) {
+			Object current = mapping.getVersion(loaded.getValues());
+			version = mapping.nextVersion(current);
+			params.put(mapping.getVersionColumn(), mapping.versionField(version));
+			where.put(mapping.getVersionColumn(), mapping.versionField(current));
+		}
+		
+		int[] affected = new int[1];
+		update(mapping.getTable(), params, where, (sql, values) -> 
+			nativeExecute(sql, values, null, affected));
+		
+		if(mapping.isVersioned()) {
+			if(affected[0] == 0) {
+				throw new OptimisticLockException(o);
+			}
+			mapping.setVersion(o, version);
+		}
+		
+		evict(mapping, Collections.singletonList(id));
+		
+		return affected[0];
+	}
+	
+	@Override
+	public <T> int deleteById(Class<T> clazz, Object id) {
+		return deleteAllById(clazz, Collections.singletonList(id));
+	}
+	
+	@Override
+	public <T> int deleteAllById(Class<T> clazz, Collection<?> ids) {
+		EntityMapping mapping = mappingOf(clazz);
+		String column = mapping.getKeyColumn();
+		
+		int deleted = 0;
+		
+		List<Object> chunk = new ArrayList<Object>(Math.min(ids.size(), deleteChunkSize));
+		for(Object id : ids) {
+			if(id == null) {
+				throw new IllegalArgumentException("Null id for " + clazz.getName());
+			}
+			chunk.add(id);
+			
+			if(chunk.size() >= deleteChunkSize) {
+				deleted += deleteChunk(mapping, column, chunk);
+				chunk.clear();
+			}
+		}
+		
+		if(!chunk.isEmpty()) {
+			deleted += deleteChunk(mapping, column, chunk);
+		}
+		
+		return deleted;
+	}
+	
+	private int deleteChunk(EntityMapping mapping, String column, List<Object> ids) {
+		// partial chunks are padded with the last id to a power of two, few statements are cached
+		int size = ids.size() > 1 ? Math.min(Integer.highestOneBit(ids.size() - 1) << 1, deleteChunkSize) : 1;
+		
+		String sql = templateCache.get(TemplateKey.delete(mapping.getTable(), column, size), k -> 
+			"delete from " + mapping.getTable() + " where " + column + 
+				Collections.nCopies(size, "?").stream().collect(Collectors.joining(", ", " in (", ")")));
+		
+		List<Object> params = new ArrayList<Object>(size);
+		for(Object id : ids) {
+			params.add(mapping.keyField(id));
+		}
+		while(params.size() < size) {
+			params.add(params.get(params.size() - 1));
+		}
+		
+		flushManaged(mapping, ids);
+		
+		int[] affected = new int[1];
+		nativeExecute(sql, params, null, affected);
+		
+		evict(mapping, ids);
+		
+		return affected[0];
+	}
+	
+	private EntityMapping mappingOf(Class<?> clazz) {
+		return entityMappings.computeIfAbsent(clazz, c -> EntityMapping.of(em, c));
+	}
+	
+	// pending changes of managed copies are written before a statement goes around them
+	private void flushManaged(EntityMapping mapping, Collection<?> ids) {
+		for(Object id : ids) {
+			if(managed(mapping, id) != null) {
+				em.flush();
+				return;
+			}
+		}
+	}
+	
+	// ids are the ones em.find takes, an @IdClass instance for composite keys
+	private Object managed(EntityMapping mapping, Object id) {
+		try {
+			Object key = mapping.cacheKey(id);
+			if(key == null) {
+				return null;
+			}
+			IdentityMapAccessor identityMap = em.unwrap(UnitOfWork.class).getIdentityMapAccessor();
+			return identityMap.getFromIdentityMap(key, mapping.getClazz());
+		} catch(RuntimeException e) {
+			// not running on EclipseLink, only the shared cache is evicted
+			return null;
+		}
+	}
+	
+	// the rows changed behind the persistence context and the shared cache
+	private void evict(EntityMapping mapping, Collection<?> ids) {
+		for(Object id : ids) {
+			Object managed = managed(mapping, id);
+			if(managed != null) {
+				em.detach(managed);
+			}
+		}
+		
+		Cache cache = em.getEntityManagerFactory().getCache();
+		for(Object id : ids) {
+			cache.evict(mapping.getClazz(), id);
+		}
+	}
+	
 	@Override
 	public <T> T delete(T o) {
 		em.remove(em.merge(o));
-		em.flush();
+		writtenEntity(o);
+		written();
 		return o;
 	}
 	
+	@Override
+	public void flush() {
+		em.flush();
+		
+		PendingWrites pending = pendingWrites.get();
+		if(pending != null) {
+			pending.count = 0;
+		}
+	}
+	
+	private boolean isFlushDeferred() {
+		return deferFlush || 
+				(em instanceof SharedEntityManager && ((SharedEntityManager)em).isFlushDeferred());
+	}
+	
+	private void written() {
+		if(!isFlushDeferred()) {
+			em.flush();
+			return;
+		}
+		
+		EntityManager current = currentEm();
+		
+		PendingWrites pending = pendingWrites.get();
+		if(pending == null || pending.em != current) {
+			pending = new PendingWrites(current);
+			pendingWrites.set(pending);
+		}
+		
+		if(++pending.count >= autoFlushThreshold && autoFlushThreshold > 0) {
+			em.flush();
+			if(clearOnAutoFlush) {
+				em.clear();
+			}
+			pending.count = 0;
+		}
+	}
+	
+	private EntityManager currentEm() {
+		return em instanceof SharedEntityManager ? 
+				((SharedEntityManager)em).getEntityManager() : em;
+	}
+	
+	// raw jdbc shares the connection, entity writes still waiting in the persistence context go out first
+	private Connection connection() {
+		PendingWrites pending = pendingWrites.get();
+		if(pending != null && pending.count > 0) {
+			if(pending.em == currentEm()) {
+				em.flush();
+			}
+			pending.count = 0;
+		}
+		
+		return em.unwrap(Connection.class);
+	}
+	
 	@Override
 	public <T> Into<T> insert(Class<T> clazz) {
 		return insertBuilder.into(clazz);
@@ -139,25 +784,50 @@ public class DAOImpl implements DAO {
 	@Override
 	public <T> void execute(Into<T> into) {
 		NativeSQLResult result = into.to(insertSQL);
-		nativeExecute(result.sqlValues(), result.values(), null);
+		nativeExecute(sqlValues(result), result.values(), null);
 	}
 	
 	@Override
 	public <T> void execute(Update<T> update) {
 		NativeSQLResult result = update.to(updateSQL);
-		nativeExecute(result.sqlValues(), result.values(), null);
+		nativeExecute(sqlValues(result), result.values(), null);
 	}
 	
 	@Override
 	public <T> void execute(Delete<T> delete) {
 		NativeSQLResult result = delete.to(deleteSQL);
-		nativeExecute(result.sqlValues(), result.values(), null);
+		nativeExecute(sqlValues(result), result.values(), null);
 	}
 	
 	@Override
 	public <R> void execute(BinderSQL<R> binder, R r) {
 		NativeSQLResult result = binder.bind(r);
-		nativeExecute(result.sqlValues(), result.values(), null);
+		nativeExecute(sqlValues(result), result.values(), null);
+	}
+	
+	@Override
+	public <R> List<int[]> executeBatch(BinderSQL<R> binder, Iterable<R> rows) {
+		return executeBatch(binder, rows, null);
+	}
+	
+	@Override
+	public <R> List<int[]> executeBatch(BinderSQL<R> binder, Iterable<R> rows, RowHandler handlerKeys) {
+		return nativeExecuteBatch(rows, r -> binder.bind(r), handlerKeys);
+	}
+	
+	@Override
+	public <T> List<int[]> executeBatchInsert(Iterable<Into<T>> intos) {
+		return nativeExecuteBatch(intos, into -> into.to(insertSQL), null);
+	}
+	
+	@Override
+	public <T> List<int[]> executeBatchUpdate(Iterable<Update<T>> updates) {
+		return nativeExecuteBatch(updates, update -> update.to(updateSQL), null);
+	}
+	
+	@Override
+	public <T> List<int[]> executeBatchDelete(Iterable<Delete<T>> deletes) {
+		return nativeExecuteBatch(deletes, delete -> delete.to(deleteSQL), null);
 	}
 	
 	@Override
@@ -173,34 +843,73 @@ public class DAOImpl implements DAO {
 	public <T> javax.persistence.Query nativeQuery(Query<T> query) {
 		NativeSQLResult result = query.to(nativeSQL);
 		
-		javax.persistence.Query q = em.createNativeQuery(result.sqlValues());
+		javax.persistence.Query q = em.createNativeQuery(sqlValues(result));
 		addParams(q, result.values());
 		
 		return q;
 	}
 	
-	@SuppressWarnings("unchecked")
 	@Override
 	public List<Map<String, Object>> list(String sql, List<Object> params, Long first, Long max) {
-		javax.persistence.Query q = em.createNativeQuery(sql);
-		q.setHint(QueryHints.RESULT_TYPE, ResultType.Map);
-		
-		addParams(q, params);
-		
-		Long count = -1L;
+		return list(sql, params, first, max, (CountStrategy)null);
+	}
+	
+	@Override
+	public List<Map<String, Object>> list(String sql, List<Object> params, QueryOptions options) {
+		return list(sql, params, null, null, null, options);
+	}
+	
+	@Override
+	public List<Map<String, Object>> list(String sql, List<Object> params, Long first, Long max, 
+			CountStrategy countStrategy) {
+		return list(sql, params, first, max, countStrategy, null);
+	}
+	
+	private List<Map<String, Object>> list(String sql, List<Object> params, Long first, Long max, 
+			CountStrategy countStrategy, QueryOptions options) {
+		QueryOptions o = resolve(options);
+		CountStrategy strategy = first != null ? strategyOf(countStrategy) : CountStrategy.none();
+		
+		Future<Long> pending = countAsync(sql, params, strategy);
+		try {
+			return listPage(sql, params, first, max, strategy, pending, o);
+		} finally {
+			// a failed page query leaves no count to wait for
+			cancel(pending);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private List<Map<String, Object>> listPage(String sql, List<Object> params, Long first, Long max, 
+			CountStrategy strategy, Future<Long> pending, QueryOptions o) {
+		boolean window = strategy.getType() == CountStrategy.Type.WINDOW;
+		
+		String listSql = window ? windowSQL(sql) : sql;
+		StatementTimer timer = timer(StatementEvent.Type.QUERY, listSql, params);
+		
+		javax.persistence.Query q = em.createNativeQuery(listSql);
+		q.setHint(QueryHints.RESULT_TYPE, ResultType.Map);
+		applyOptions(q, sql, o);
+		
+		addParams(q, params);
 		
 		if(first != null) {
 			q.setFirstResult(first.intValue());
-			count = getCount(sql, params);
 		}
 		
 		if(max != null) {
 			q.setMaxResults(max.intValue());
 		}
 		
+		List<Map<String, Object>> dbResult;
+		try {
+			dbResult = q.getResultList();
+		} catch(RuntimeException e) {
+			fire(timer, e);
+			throw e;
+		}
 		
-		List<Map<String, Object>> dbResult = q.getResultList();
-
+		long mapping = timer != null ? timer.mappingStart() : 0L;
 		
 		final List<Map<String, Object>> result = new ArrayList<Map<String, Object>>(dbResult.size());
 		dbResult.forEach(i -> {
@@ -211,39 +920,208 @@ public class DAOImpl implements DAO {
 			result.add(m);
 		});
 		
+		record(sql, o, result.size());
+		
+		if(timer != null) {
+			timer.mappingEnd(mapping);
+			timer.addRows(result.size());
+			fire(timer, null);
+		}
+		
 		if(first != null) {
-			return new SubListImpl<Map<String, Object>>(result, first, max, count);
+			Count count;
+			if(window) {
+				count = windowCount(result, first);
+			} else {
+				count = count(sql, params, strategy, pending);
+			}
+			return new SubListImpl<Map<String, Object>>(result, first, max, count.value, count.type);
 		} else {
 			return result;
 		}
 	}
 	
-	@SuppressWarnings("unchecked")
-	private <T> List<T> list(Class<T> clazz, String sql, List<Object> params, 
-			Long first, Long max) {
-		javax.persistence.Query q = em.createNativeQuery(sql, clazz);
-		addParams(q, params);
+	@Override
+	public ResultTable table(String sql, List<Object> params, Long first, Long max) {
+		if(first != null && first < 0) {
+			throw new IllegalArgumentException("first must not be negative: " + first);
+		}
+		if(max != null && max < 1) {
+			throw new IllegalArgumentException("max must be greater than zero: " + max);
+		}
+		
+		QueryOptions o = resolve(null);
+		
+		String tableSql = sql;
+		List<Object> tableParams = params;
+		long skip = 0L;
+		if(first != null && first > 0) {
+			if(pagingDialect() == PagingDialect.NONE) {
+				skip = first;
+			} else {
+				tableParams = params != null ? new ArrayList<Object>(params) : new ArrayList<Object>();
+				tableSql = pageSQL(sql, first, max, tableParams);
+			}
+		}
+		
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		boolean failed = false;
+		StatementTimer timer = timer(StatementEvent.Type.QUERY, tableSql, tableParams);
+		try {
+			st = prepareStatement(tableSql, false);
+			
+			applyOptions(st, sql, o);
+			addParams(st, tableParams);
+			
+			if(max != null) {
+				long limit = Math.min(skip + max, Integer.MAX_VALUE);
+				if(o == null || o.getMaxRows() == null || o.getMaxRows() > limit) {
+					st.setMaxRows((int)limit);
+				}
+			}
+			
+			rs = st.executeQuery();
+			
+			while(skip > 0 && rs.next()) {
+				skip--;
+			}
+			
+			ResultTableImpl table = new ResultTableImpl(rs.getMetaData(), 
+					max != null ? (int)Math.min(max, MAX_TABLE_CAPACITY) : ResultTableImpl.INITIAL_CAPACITY);
+			
+			while(rs.next()) {
+				if(timer != null) {
+					timer.firstRow();
+					timer.addRows(1);
+				}
+				table.read(rs);
+			}
+			
+			record(sql, o, table.getRowCount());
+			
+			fire(timer, null);
+			
+			return table;
+			
+		} catch(Exception e) {
+			failed = true;
+			
+			fire(timer, e);
+			logError(tableSql, tableParams, e);
+			throw new RuntimeException(e);
+			
+		} finally {
+			
+			if(rs != null) {
+				try {
+					rs.close();
+				} catch(Exception e) {
+					logger.log(Level.WARNING, "Could not close the result set", e);
+				}
+			}
+			if(st != null) {
+				// cached statements keep their fetch size and limits
+				if(!failed) {
+					failed = !resetOptions(st);
+				}
+				releaseStatement(st, failed);
+			}
+		}
+	}
+	
+	// the offset runs in the database where the dialect has one
+	private String pageSQL(String sql, long first, Long max, List<Object> params) {
+		if(pagingDialect() == PagingDialect.LIMIT_OFFSET) {
+			params.add(max != null ? max : Long.MAX_VALUE);
+			params.add(first);
+			return sql + " limit ? offset ?";
+		}
+		
+		StringBuilder sb = new StringBuilder(sql);
+		sb.append(" offset ? rows");
+		params.add(first);
+		
+		if(max != null) {
+			sb.append(" fetch next ? rows only");
+			params.add(max);
+		}
+		
+		return sb.toString();
+	}
+	
+	private <T> List<T> list(EntityManager target, Class<T> clazz, String sql, List<Object> params, 
+			Long first, Long max, CountStrategy countStrategy, QueryOptions o) {
+		CountStrategy strategy = first != null ? strategyOf(countStrategy) : CountStrategy.none();
+		
+		// entities cannot carry the window column, the count runs apart
+		if(strategy.getType() == CountStrategy.Type.WINDOW) {
+			strategy = CountStrategy.exact();
+		}
+		
+		Future<Long> pending = countAsync(sql, params, strategy);
+		try {
+			return listPage(target, clazz, sql, params, first, max, strategy, pending, o);
+		} finally {
+			cancel(pending);
+		}
+	}
+	
+	private <T> List<T> listPage(EntityManager target, Class<T> clazz, String sql, List<Object> params, 
+			Long first, Long max, CountStrategy strategy, Future<Long> pending, QueryOptions o) {
+		StatementTimer timer = timer(StatementEvent.Type.QUERY, sql, params);
 		
-		Long count = -1L;
+		javax.persistence.Query q = target.createNativeQuery(sql, clazz);
+		readOnly(q);
+		applyOptions(q, sql, o);
+		addParams(q, params);
 		
 		if(first != null) {
 			q.setFirstResult(first.intValue());
-			count = getCount(sql, params);
 		}
 		
 		if(max != null) {
 			q.setMaxResults(max.intValue());
 		}
 		
-		List<T> result = q.getResultList(); 
+		List<T> result;
+		try {
+			result = q.getResultList();
+		} catch(RuntimeException e) {
+			fire(timer, e);
+			throw e;
+		}
+		
+		record(sql, o, result.size());
+		
+		if(timer != null) {
+			timer.addRows(result.size());
+			fire(timer, null);
+		}
 		
 		if(first != null) {
-			result = new SubListImpl<T>(result, first, max, count);
+			Count count = count(sql, params, strategy, pending);
+			result = new SubListImpl<T>(result, first, max, count.value, count.type);
 		}
 		
 		return result;
 	}
 	
+	private String sqlValues(NativeSQLResult result) {
+		String sql = result.sql();
+		int params = result.values() != null ? result.values().size() : 0;
+		
+		RenderedSQL rendered = sqlCache.get(sql);
+		
+		// collection parameters may expand to a different number of placeholders
+		if(rendered == null || rendered.params != params) {
+			rendered = new RenderedSQL(result.sqlValues(), params);
+			sqlCache.put(sql, rendered);
+		}
+		
+		return rendered.sqlValues;
+	}
+	
 	private void addParams(PreparedStatement st, List<Object> params) throws SQLException {
 		if(params != null) {
 			for(int i = 0; i < params.size(); i++) {
@@ -251,11 +1129,11 @@ public class DAOImpl implements DAO {
 				if(o instanceof Date) {
 					st.setTimestamp(i + 1, new java.sql.Timestamp(((java.util.Date)o).getTime()));
 				} else if(o instanceof File) {
-					try {
-						st.setBinaryStream(i + 1, new FileInputStream((File)o));
-					} catch(Exception e) {
-						throw new RuntimeException(e);
-					}
+					File file = (File)o;
+					st.setBinaryStream(i + 1, openStream(() -> Files.newInputStream(file.toPath())), file.length());
+				} else if(o instanceof BinaryContent) {
+					BinaryContent content = (BinaryContent)o;
+					st.setBinaryStream(i + 1, openStream(content::open), content.getLength());
 				} else if(o instanceof InputStream) {
 					try {
 						st.setBinaryStream(i + 1, (InputStream)o);
@@ -269,15 +1147,263 @@ public class DAOImpl implements DAO {
 		}
 	}
 
+	private interface StreamOpener {
+		
+		InputStream open() throws IOException;
+		
+	}
+	
+	// streams opened for parameters are closed once the statement has run
+	private InputStream openStream(StreamOpener opener) {
+		try {
+			InputStream in = opener.open();
+			
+			List<InputStream> opened = openedStreams.get();
+			if(opened == null) {
+				opened = new ArrayList<InputStream>();
+				openedStreams.set(opened);
+			}
+			opened.add(in);
+			
+			return in;
+			
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private void closeStreams() {
+		List<InputStream> opened = openedStreams.get();
+		if(opened == null || opened.isEmpty()) {
+			return;
+		}
+		
+		for(InputStream in : opened) {
+			try {
+				in.close();
+			} catch(Exception e) {
+				logger.log(Level.WARNING, "Could not close the parameter stream", e);
+			}
+		}
+		opened.clear();
+	}
+	
+	// read-only invocations keep the entities out of the persistence context
+	private void readOnly(javax.persistence.Query q) {
+		if(em instanceof SharedEntityManager && ((SharedEntityManager)em).isReadOnly()) {
+			q.setHint(QueryHints.READ_ONLY, HintValues.TRUE);
+		}
+	}
+	
+	private QueryOptions resolve(QueryOptions options) {
+		return options != null ? options.orElse(defaultOptions) : defaultOptions;
+	}
+	
+	// only the options that change the rows take part in the result cache key
+	private List<Object> resultOptions(QueryOptions o) {
+		return o != null ? Arrays.asList(o.getMaxRows(), o.getHints()) : null;
+	}
+	
+	private Integer fetchSizeOf(String sql, QueryOptions o, Integer fallback) {
+		if(o == null) {
+			return fallback;
+		}
+		
+		if(o.getFetchSize() != null && o.getFetchSize() > 0) {
+			return o.getFetchSize();
+		}
+		
+		if(o.isAdaptiveFetchSize()) {
+			Integer adaptive = adaptiveFetchSize.get(sql);
+			if(adaptive != null) {
+				return adaptive;
+			}
+		}
+		
+		return fallback;
+	}
+	
+	private void record(String sql, QueryOptions o, long rows) {
+		if(o != null && o.isAdaptiveFetchSize()) {
+			adaptiveFetchSize.record(sql, rows);
+		}
+	}
+	
+	private void applyOptions(javax.persistence.Query q, String sql, QueryOptions o) {
+		if(o == null) {
+			return;
+		}
+		
+		Integer size = fetchSizeOf(sql, o, null);
+		if(size != null) {
+			q.setHint(QueryHints.JDBC_FETCH_SIZE, size);
+		}
+		
+		if(o.getMaxRows() != null) {
+			q.setHint(QueryHints.JDBC_MAX_ROWS, o.getMaxRows());
+		}
+		
+		if(o.getTimeout() != null) {
+			q.setHint(QueryHints.JDBC_TIMEOUT, o.getTimeout());
+		}
+		
+		o.getHints().forEach(q::setHint);
+	}
+	
+	private void applyOptions(PreparedStatement st, String sql, QueryOptions o) throws SQLException {
+		st.setFetchSize(fetchSizeOf(sql, o, fetchSize));
+		
+		if(o == null) {
+			return;
+		}
+		
+		if(o.getMaxRows() != null) {
+			st.setMaxRows(o.getMaxRows());
+		}
+		
+		if(o.getTimeout() != null) {
+			st.setQueryTimeout(o.getTimeout());
+		}
+	}
+	
+	private boolean resetOptions(PreparedStatement st) {
+		try {
+			st.setFetchSize(0);
+			st.setMaxRows(0);
+			st.setQueryTimeout(0);
+			return true;
+		} catch(SQLException e) {
+			return false;
+		}
+	}
+	
 	private void addParams(javax.persistence.Query q, List<Object> params) {
 		if(params != null) {
 			for(int i = 0; i < params.size(); i++) {
-				q.setParameter(i + 1, params.get(i));
+				Object o = params.get(i);
+				if(o instanceof BinaryContent) {
+					// JPA binds values, not streams
+					try {
+						o = ((BinaryContent)o).toBytes();
+					} catch(IOException e) {
+						throw new RuntimeException(e);
+					}
+				}
+				q.setParameter(i + 1, o);
+			}
+		}
+	}
+	
+	private CountStrategy strategyOf(CountStrategy countStrategy) {
+		return countStrategy != null ? countStrategy : this.countStrategy;
+	}
+	
+	private Future<Long> countAsync(String sql, List<Object> params, CountStrategy strategy) {
+		if(strategy.getType() != CountStrategy.Type.CONCURRENT) {
+			return null;
+		}
+		
+		EntityManagerFactory emf = em.getEntityManagerFactory();
+		
+		return getCountExecutor().submit(() -> {
+			EntityManager cem = emf.createEntityManager();
+			try {
+				return getCount(cem, sql, params);
+			} finally {
+				cem.close();
+			}
+		});
+	}
+	
+	// cancelling a finished count does nothing
+	private void cancel(Future<Long> pending) {
+		if(pending != null) {
+			pending.cancel(true);
+		}
+	}
+	
+	private Count count(String sql, List<Object> params, CountStrategy strategy, Future<Long> pending) {
+		switch(strategy.getType()) {
+			case NONE:
+				return new Count(-1L, CountType.UNKNOWN);
+				
+			case CONCURRENT:
+				try {
+					return new Count(pending.get(), CountType.EXACT);
+				} catch(ExecutionException e) {
+					throw new RuntimeException(e.getCause());
+				} catch(InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new RuntimeException(e);
+				}
+				
+			case CACHED:
+				List<Object> key = new ArrayList<Object>();
+				key.add(sql);
+				if(params != null) {
+					key.addAll(params);
+				}
+				
+				Long cached = countCache.get(key);
+				if(cached != null) {
+					return new Count(cached, CountType.ESTIMATED);
+				}
+				
+				Long value = getCount(sql, params);
+				countCache.put(key, value, strategy.getTtlMillis());
+				return new Count(value, CountType.EXACT);
+				
+			case CAPPED:
+				return getCappedCount(sql, params, strategy.getLimit());
+				
+			default:
+				return new Count(getCount(sql, params), CountType.EXACT);
+		}
+	}
+	
+	private String windowSQL(String sql) {
+		return "SELECT _w.*, COUNT(*) OVER() AS " + WINDOW_COUNT + " FROM (" + sql + ") _w";
+	}
+	
+	private Count windowCount(List<Map<String, Object>> result, Long first) {
+		Long total = null;
+		
+		for(Map<String, Object> m : result) {
+			Object v = m.remove(WINDOW_COUNT);
+			if(total == null && v != null) {
+				total = ((Number)v).longValue();
 			}
 		}
+		
+		if(total != null) {
+			return new Count(total, CountType.EXACT);
+		} else if(first == 0L) {
+			return new Count(0L, CountType.EXACT);
+		} else {
+			// a page past the end carries no rows to read the total from
+			return new Count(-1L, CountType.UNKNOWN);
+		}
+	}
+	
+	@SuppressWarnings("unchecked")
+	private Count getCappedCount(String sql, List<Object> params, long limit) {
+		javax.persistence.Query q = em.createNativeQuery("SELECT 1 FROM (" + sql + ") _v");
+		addParams(q, params);
+		q.setMaxResults(limit < Integer.MAX_VALUE ? (int)limit + 1 : Integer.MAX_VALUE);
+		
+		int size = q.getResultList().size();
+		if(size > limit) {
+			return new Count(limit, CountType.CAPPED);
+		} else {
+			return new Count((long)size, CountType.EXACT);
+		}
 	}
 	
 	private Long getCount(String sql, List<Object> params) {
+		return getCount(em, sql, params);
+	}
+	
+	private Long getCount(EntityManager em, String sql, List<Object> params) {
 		String sqlCount = sql;
 		
 		/*
@@ -286,178 +1412,972 @@ public class DAOImpl implements DAO {
 		if(pos > -1) {
 			sqlCount = sqlCount.substring(0, pos);
 		}
-		*/
+		*/
+		
+		sqlCount = "SELECT COUNT(*) FROM (" + sqlCount + ") _v";
+		StatementTimer timer = timer(StatementEvent.Type.QUERY, sqlCount, params);
+		
+		javax.persistence.Query q = em.createNativeQuery(sqlCount);
+		addParams(q, params);
+		
+		try {
+			Long count = ((Number)q.getSingleResult()).longValue();
+			if(timer != null) {
+				timer.addRows(1);
+			}
+			fire(timer, null);
+			return count;
+			
+		} catch(RuntimeException e) {
+			fire(timer, e);
+			throw e;
+		}
+	}
+	
+	@Override
+	public <T> List<T> list(Query<T> query) {
+		return list(query, null, null);
+	}
+	
+	@Override
+	public <T> List<T> list(Query<T> query, Long first, Long max) {
+		return list(query, first, max, null);
+	}
+	
+	@Override
+	public <T> List<T> list(Query<T> query, Long first, Long max, CountStrategy countStrategy) {
+		return list(query, first, max, countStrategy, null);
+	}
+	
+	@Override
+	public <T> List<T> list(Query<T> query, QueryOptions options) {
+		return list(query, null, null, null, options);
+	}
+	
+	private <T> List<T> list(Query<T> query, Long first, Long max, CountStrategy countStrategy, 
+			QueryOptions options) {
+		NativeSQLResult result = query.to(nativeSQL);
+		String sql = sqlValues(result);
+		QueryOptions o = resolve(options);
+		
+		if(!isCacheable(sql)) {
+			return list(em, query.getClazz(), sql, result.values(), first, max, countStrategy, o);
+		}
+		
+		// cached entities are detached and shared, the lists are read-only
+		List<Object> key = Arrays.asList("list", query.getClazz(), sql, valuesOf(result), 
+				first, max, countStrategy, resultOptions(o));
+		return resultCache.get(key, sql, () -> detached(d -> 
+			readOnly(list(d, query.getClazz(), sql, result.values(), first, max, countStrategy, o))));
+	}
+	
+	private List<Object> valuesOf(NativeSQLResult result) {
+		return result.values() != null ? new ArrayList<Object>(result.values()) : Collections.emptyList();
+	}
+	
+	@Override
+	public <T> KeysetPage<T> page(Query<T> query, Keyset<T> keyset, Long max) {
+		NativeSQLResult result = query.to(nativeSQL);
+		
+		List<Object> params = new ArrayList<Object>();
+		if(result.values() != null) {
+			params.addAll(result.values());
+		}
+		
+		String sql = keysetSQL(sqlValues(result), keyset, params);
+		List<T> rows = list(em, query.getClazz(), sql, params, null, max, null, resolve(null));
+		
+		String next = null;
+		if(max != null && !rows.isEmpty() && rows.size() >= max) {
+			next = KeysetTokens.encode(keyset.keysOf(rows.get(rows.size() - 1)));
+		}
+		
+		return new KeysetPageImpl<T>(rows, max, next);
+	}
+	
+	private String keysetSQL(String sql, Keyset<?> keyset, List<Object> params) {
+		List<String> columns = keyset.getColumns();
+		if(columns.isEmpty()) {
+			throw new IllegalArgumentException("Keyset without columns.");
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		
+		sb.append("select _k.* from (");
+		sb.append(sql);
+		sb.append(") _k");
+		
+		if(keyset.getAfter() != null) {
+			List<Object> after = KeysetTokens.decode(keyset.getAfter());
+			if(after.size() != columns.size()) {
+				throw new IllegalArgumentException("Keyset token does not match the columns: " + columns);
+			}
+			
+			// (k1, k2) > (?, ?) expanded as k1 > ? or (k1 = ? and k2 > ?), portable across dialects
+			sb.append(" where ");
+			for(int i = 0; i < columns.size(); i++) {
+				if(i > 0) {
+					sb.append(" or ");
+				}
+				sb.append("(");
+				for(int j = 0; j < i; j++) {
+					sb.append("_k.").append(columns.get(j)).append(" = ? and ");
+					params.add(after.get(j));
+				}
+				sb.append("_k.").append(columns.get(i));
+				sb.append(keyset.isDescending(i) ? " < ?" : " > ?");
+				sb.append(")");
+				params.add(after.get(i));
+			}
+		}
+		
+		sb.append(" order by ");
+		for(int i = 0; i < columns.size(); i++) {
+			if(i > 0) {
+				sb.append(", ");
+			}
+			sb.append("_k.").append(columns.get(i));
+			if(keyset.isDescending(i)) {
+				sb.append(" desc");
+			}
+		}
+		
+		return sb.toString();
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <R> BeanMapper<R> getMapper(Class<R> clazz) {
+		return (BeanMapper<R>)mappers.computeIfAbsent(clazz, c -> new BeanMapper<R>(clazz));
+	}
+	
+	@Override
+	public <T, R> List<R> list(Query<T> query, Class<R> clazzR) {
+		List<R> l = new ArrayList<R>();
+		
+		NativeSQLResult result = query.to(nativeSQL);
+		nativeSQL(sqlValues(result), result.values(), getMapper(clazzR).handler(l::add));
+		
+		return l;
+	}
+		
+	@Override
+	public <T> Query<T> query(Class<T> clazz) {
+		return queryBuilder.from(clazz);
+	}
+	
+	@SuppressWarnings("unchecked")
+	private <T> T single(EntityManager target, Class<T> clazz, String sql, List<Object> params, 
+			QueryOptions options) {
+		StatementTimer timer = timer(StatementEvent.Type.QUERY, sql, params);
+		try {
+			javax.persistence.Query q = target.createNativeQuery(sql, clazz);
+			readOnly(q);
+			applyOptions(q, sql, options);
+			q.setMaxResults(1);
+			addParams(q, params);
+			T o = (T) q.getSingleResult();
+			if(timer != null) {
+				timer.addRows(1);
+			}
+			fire(timer, null);
+			return o;
+		} catch(NoResultException nre) {
+			fire(timer, null);
+			return null;
+		} catch(RuntimeException e) {
+			fire(timer, e);
+			throw e;
+		}
+	}
+	
+	@Override
+	public void nativeSQL(String sql, List<Object> params, RowHandler handler) { 
+		nativeSQL(sql, params, null, handler);
+	}
+	
+	@Override
+	public void nativeSQL(String sql, List<Object> params, QueryOptions options, RowHandler handler) { 
+		PreparedStatement st = null;
+		ResultSet rs = null;
+		boolean failed = false;
+		QueryOptions o = resolve(options);
+		// scrollable cursors are not kept in the statement cache
+		boolean scrollable = o != null && !o.isForwardOnly();
+		StatementTimer timer = timer(StatementEvent.Type.QUERY, sql, params);
+		try {
+			if(scrollable) {
+				st = connection().prepareStatement(sql, 
+						ResultSet.TYPE_SCROLL_INSENSITIVE, ResultSet.CONCUR_READ_ONLY);
+			} else {
+				st = prepareStatement(sql, false);
+			}
+			
+			applyOptions(st, sql, o);
+			addParams(st, params);
+			
+			rs = st.executeQuery();
+			
+			record(sql, o, forEachHandler(rs, handler, timer));
+			
+			fire(timer, null);
+			
+		} catch(Exception e) {
+			failed = true;
+			
+			fire(timer, e);
+			logError(sql, params, e);
+			throw new RuntimeException(e);
+			
+		} finally {
+			
+			if(rs != null) {
+				try {
+					rs.close();
+				} catch(Exception e) {
+					logger.log(Level.WARNING, "Could not close the result set", e);
+				}
+			}
+			if(st != null) {
+				if(scrollable) {
+					closeStreams();
+					try {
+						st.close();
+					} catch(Exception e) {
+						logger.log(Level.WARNING, "Could not close the statement", e);
+					}
+				} else {
+					// cached statements keep their fetch size and limits
+					if(!failed) {
+						failed = !resetOptions(st);
+					}
+					releaseStatement(st, failed);
+				}
+			}
+		}
+	}
+	
+	private PreparedStatement prepareStatement(String sql, boolean generatedKeys) throws SQLException {
+		Connection conn = connection();
+		
+		// only the shared entity manager tells when the connection goes away
+		if(statementCacheSize < 1 || !(em instanceof SharedEntityManager)) {
+			closeStatements();
+			if(generatedKeys) {
+				return conn.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+			} else {
+				return conn.prepareStatement(sql);
+			}
+		}
+		
+		StatementCache cache = statementCache.get();
+		if(cache == null || cache.getConnection() != conn || cache.getSize() != statementCacheSize) {
+			if(cache != null) {
+				cache.close();
+			}
+			cache = new StatementCache(conn, statementCacheSize);
+			statementCache.set(cache);
+		}
+		
+		return cache.acquire(sql, generatedKeys);
+	}
+	
+	private void releaseStatement(PreparedStatement st, boolean failed) {
+		closeStreams();
+		
+		StatementCache cache = statementCache.get();
+		if(cache != null) {
+			cache.release(st, failed);
+		} else {
+			try {
+				st.close();
+			} catch(Exception e) {
+				logger.log(Level.WARNING, "Could not close the statement", e);
+			}
+		}
+	}
+
+	private void forEachHandler(ResultSet rs, RowHandler handler) throws SQLException {
+		forEachHandler(rs, handler, null);
+	}
+	
+	private long forEachHandler(ResultSet rs, RowHandler handler, StatementTimer timer) throws SQLException {
+		RowImpl row = new RowImpl(RowPlan.of(rs.getMetaData()));
+		long rows = 0;
+		
+		if(timer == null) {
+			while(rs.next()) {
+				rows++;
+				row.read(rs);
+				
+				if(!handler.execute(row)) {
+					break;
+				}
+			}
+			return rows;
+		}
+		
+		while(rs.next()) {
+			rows++;
+			timer.firstRow();
+			timer.addRows(1);
+			
+			long mapping = timer.mappingStart();
+			row.read(rs);
+			boolean next = handler.execute(row);
+			timer.mappingEnd(mapping);
+			
+			if(!next) {
+				break;
+			}
+		}
+		
+		return rows;
+	}
+	
+	@Override
+	public Stream<Map<String, Object>> stream(String sql, List<Object> params) {
+		return stream(sql, params, null);
+	}
+	
+	@Override
+	public Stream<Map<String, Object>> stream(String sql, List<Object> params, QueryOptions options) {
+		PreparedStatement st = null;
+		QueryOptions o = resolve(options);
+		StatementTimer timer = timer(StatementEvent.Type.QUERY, sql, params);
+		try {
+			st = connection().prepareStatement(sql, 
+					o == null || o.isForwardOnly() ? ResultSet.TYPE_FORWARD_ONLY : ResultSet.TYPE_SCROLL_INSENSITIVE, 
+					ResultSet.CONCUR_READ_ONLY);
+			applyOptions(st, sql, o);
+			
+			addParams(st, params);
+			
+			ResultSet rs = st.executeQuery();
+			closeStreams();
+			
+			RowImpl row = new RowImpl(RowPlan.of(rs.getMetaData()));
+			
+			ResultSetSpliterator<Map<String, Object>> rows;
+			if(timer == null) {
+				rows = new ResultSetSpliterator<Map<String, Object>>(st, rs, r -> {
+					row.read(r);
+					return row.copy();
+				});
+			} else {
+				rows = new ResultSetSpliterator<Map<String, Object>>(st, rs, r -> {
+					timer.firstRow();
+					timer.addRows(1);
+					long mapping = timer.mappingStart();
+					row.read(r);
+					Map<String, Object> m = row.copy();
+					timer.mappingEnd(mapping);
+					return m;
+				});
+				rows.setCloseListener(error -> fire(timer, error));
+			}
+			
+			return StreamSupport.stream(rows, false).onClose(rows::close);
+			
+		} catch(Exception e) {
+			fire(timer, e);
+			closeStreams();
+			
+			if(st != null) {
+				try {
+					st.close();
+				} catch(Exception ec) {
+					logger.log(Level.WARNING, "Could not close the statement", ec);
+				}
+			}
+			
+			logError(sql, params, e);
+			throw new RuntimeException(e);
+		}
+	}
+	
+	@Override
+	public <T> long parallelScan(Query<T> query, String partitionColumn, int partitions, RowHandler handler) {
+		return parallelScan(query, partitionColumn, partitions, ScanPartitioning.RANGE, false, handler);
+	}
+	
+	@Override
+	public <T> long parallelScan(Query<T> query, String partitionColumn, int partitions, 
+			ScanPartitioning partitioning, boolean ordered, RowHandler handler) {
+		if(partitions < 1) {
+			throw new IllegalArgumentException("partitions must be greater than zero: " + partitions);
+		}
+		
+		NativeSQLResult result = query.to(nativeSQL);
+		String sql = "select _s.* from (" + sqlValues(result) + ") _s";
+		List<Object> params = valuesOf(result);
+		String column = "_s." + partitionColumn;
+		
+		List<List<Object>> bounds = new ArrayList<List<Object>>();
+		String partitionSql;
+		
+		if(partitioning == ScanPartitioning.MODULO) {
+			partitionSql = sql + " where abs(mod(" + column + ", " + partitions + ")) = ?";
+			for(int i = 0; i < partitions; i++) {
+				bounds.add(Arrays.<Object>asList(i));
+			}
+			
+		} else {
+			javax.persistence.Query q = em.createNativeQuery(
+					"select min(" + column + "), max(" + column + ") from (" + sqlValues(result) + ") _s");
+			addParams(q, params);
+			Object[] range = (Object[])q.getSingleResult();
+			
+			if(range[0] == null) {
+				return 0L;
+			}
+			if(!(range[0] instanceof Number)) {
+				throw new IllegalArgumentException("Range partitions need a numeric column: " + partitionColumn);
+			}
+			
+			// decimal arithmetic, bounds near the ends of long do not overflow
+			BigDecimal min = decimalOf((Number)range[0]).setScale(0, RoundingMode.FLOOR);
+			BigDecimal max = decimalOf((Number)range[1]).setScale(0, RoundingMode.FLOOR);
+			BigDecimal step = max.subtract(min)
+					.divideToIntegralValue(BigDecimal.valueOf(partitions)).add(BigDecimal.ONE);
+			
+			partitionSql = sql + " where " + column + " >= ? and " + column + " < ?";
+			for(BigDecimal lo = min; lo.compareTo(max) <= 0; lo = lo.add(step)) {
+				bounds.add(Arrays.<Object>asList(boundOf(lo), boundOf(lo.add(step))));
+			}
+		}
+		
+		return scan(em.getEntityManagerFactory(), partitionSql, params, bounds, ordered, handler);
+	}
+	
+	private static BigDecimal decimalOf(Number n) {
+		if(n instanceof BigDecimal) {
+			return (BigDecimal)n;
+		}
+		if(n instanceof BigInteger) {
+			return new BigDecimal((BigInteger)n);
+		}
+		if(n instanceof Double || n instanceof Float) {
+			return BigDecimal.valueOf(n.doubleValue());
+		}
+		return BigDecimal.valueOf(n.longValue());
+	}
+	
+	// integer bounds are bound as long unless they do not fit
+	private static Object boundOf(BigDecimal bound) {
+		try {
+			return bound.longValueExact();
+		} catch(ArithmeticException e) {
+			return bound;
+		}
+	}
+	
+	private long scan(EntityManagerFactory emf, String sql, List<Object> params, 
+			List<List<Object>> bounds, boolean ordered, RowHandler handler) {
+		ScanControl control = new ScanControl();
+		
+		List<Future<Long>> futures = new ArrayList<Future<Long>>();
+		List<BlockingQueue<Object>> queues = new ArrayList<BlockingQueue<Object>>();
+		
+		// submitted in order, a fifo executor always runs the partition being merged
+		for(List<Object> bound : bounds) {
+			List<Object> partitionParams = new ArrayList<Object>(params);
+			partitionParams.addAll(bound);
+			
+			Predicate<Row> sink;
+			BlockingQueue<Object> queue;
+			if(ordered) {
+				queue = new ArrayBlockingQueue<Object>(fetchSize);
+				queues.add(queue);
+				sink = row -> offer(queue, row.copy(), control);
+			} else {
+				queue = null;
+				sink = row -> handler.execute(row);
+			}
+			
+			futures.add(getScanExecutor().submit(() -> {
+				try {
+					return scanPartition(emf, sql, partitionParams, control, sink);
+				} finally {
+					if(queue != null) {
+						offer(queue, END_OF_PARTITION, control);
+					}
+				}
+			}));
+		}
+		
+		try {
+			if(ordered) {
+				merge(queues, control, handler);
+			}
+			
+			long rows = 0L;
+			for(Future<Long> f : futures) {
+				try {
+					rows += f.get();
+				} catch(ExecutionException e) {
+					control.fail(e.getCause());
+				}
+			}
+			
+			if(control.getError() != null) {
+				throw new RuntimeException(control.getError());
+			}
+			
+			return rows;
+			
+		} catch(InterruptedException e) {
+			control.cancel();
+			futures.forEach(f -> f.cancel(true));
+			Thread.currentThread().interrupt();
+			throw new RuntimeException(e);
+		}
+	}
+	
+	private void merge(List<BlockingQueue<Object>> queues, ScanControl control, 
+			RowHandler handler) throws InterruptedException {
+		for(BlockingQueue<Object> queue : queues) {
+			while(!control.isCancelled()) {
+				Object row = queue.poll(SCAN_POLL_MILLIS, TimeUnit.MILLISECONDS);
+				if(row == END_OF_PARTITION) {
+					break;
+				}
+				
+				try {
+					if(row != null && !handler.execute((Row)row)) {
+						control.cancel();
+					}
+				} catch(RuntimeException e) {
+					control.fail(e);
+				}
+			}
+		}
+	}
+	
+	private boolean offer(BlockingQueue<Object> queue, Object row, ScanControl control) {
+		try {
+			while(!control.isCancelled()) {
+				if(queue.offer(row, SCAN_POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+					return true;
+				}
+			}
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return false;
+	}
+	
+	private long scanPartition(EntityManagerFactory emf, String sql, List<Object> params, 
+			ScanControl control, Predicate<Row> sink) {
+		long rows = 0L;
+		
+		EntityManager pem = emf.createEntityManager();
+		StatementTimer timer = timer(StatementEvent.Type.QUERY, sql, params);
+		try {
+			// each partition reads on its own connection
+			pem.getTransaction().begin();
+			
+			PreparedStatement st = pem.unwrap(Connection.class).prepareStatement(sql, 
+					ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			try {
+				st.setFetchSize(fetchSize);
+				addParams(st, params);
+				
+				control.started(st);
+				
+				ResultSet rs = st.executeQuery();
+				try {
+					RowImpl row = new RowImpl(RowPlan.of(rs.getMetaData()));
+					while(!control.isCancelled() && rs.next()) {
+						if(timer != null) {
+							timer.firstRow();
+							timer.addRows(1);
+						}
+						
+						row.read(rs);
+						rows++;
+						
+						if(!sink.test(row)) {
+							control.cancel();
+						}
+					}
+				} finally {
+					rs.close();
+				}
+				
+			} finally {
+				control.finished(st);
+				closeStreams();
+				st.close();
+			}
+			
+			fire(timer, null);
+			
+		} catch(Exception e) {
+			fire(timer, e);
+			
+			// statements cancelled on purpose fail too
+			if(!control.isCancelled()) {
+				logError(sql, params, e);
+				control.fail(e);
+			}
+			
+		} finally {
+			try {
+				if(pem.getTransaction().isActive()) {
+					pem.getTransaction().rollback();
+				}
+			} finally {
+				pem.close();
+			}
+		}
+		
+		return rows;
+	}
+	
+	@Override
+	public <T> Stream<T> stream(Query<T> query) {
+		return stream(query, null);
+	}
+	
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> Stream<T> stream(Query<T> query, QueryOptions options) {
+		NativeSQLResult result = query.to(nativeSQL);
+		String sql = sqlValues(result);
+		QueryOptions o = resolve(options);
+		StatementTimer timer = timer(StatementEvent.Type.QUERY, sql, result.values());
+		
+		int pageSize = fetchSizeOf(sql, o, fetchSize);
+		
+		javax.persistence.Query q = em.createNativeQuery(sql, query.getClazz());
+		q.setHint(QueryHints.CURSOR, HintValues.TRUE);
+		q.setHint(QueryHints.CURSOR_PAGE_SIZE, pageSize);
+		q.setHint(QueryHints.JDBC_FETCH_SIZE, pageSize);
+		// entities are not registered in the persistence context, memory stays constant
+		q.setHint(QueryHints.READ_ONLY, HintValues.TRUE);
+		applyOptions(q, sql, o);
+		
+		addParams(q, result.values());
+		
+		CursoredStream cursor;
+		try {
+			cursor = (CursoredStream)q.getSingleResult();
+		} catch(RuntimeException e) {
+			fire(timer, e);
+			throw e;
+		}
+		
+		// the cursor reads on the connection of the scope that opened it
+		EntityManager owner = currentEm();
+		
+		Spliterator<T> entities = new Spliterators.AbstractSpliterator<T>(
+				Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL) {
+			
+			private int read = 0;
+			private boolean done = false;
+			
+			@Override
+			public boolean tryAdvance(Consumer<? super T> action) {
+				if(done || cursor.isClosed()) {
+					return false;
+				}
+				
+				if(currentEm() != owner) {
+					throw new IllegalStateException("Stream read outside the scope that opened it: " + sql);
+				}
+				
+				if(!cursor.hasNext()) {
+					cursor.close();
+					done = true;
+					record(sql, o, read);
+					fire(timer, null);
+					return false;
+				}
+				
+				if(timer != null) {
+					timer.firstRow();
+					timer.addRows(1);
+				}
+				
+				action.accept((T)cursor.next());
+				
+				if(++read % pageSize == 0) {
+					cursor.releasePrevious();
+				}
+				
+				return true;
+			}
+		};
+		
+		return StreamSupport.stream(entities, false).onClose(cursor::close);
+	}
+	
+	@Override
+	public <T> T single(Query<T> query) {
+		return single(query, null);
+	}
+	
+	@Override
+	public <T> T single(Query<T> query, QueryOptions options) {
+		NativeSQLResult result = query.to(nativeSQL);
+		String sql = sqlValues(result);
+		QueryOptions o = resolve(options);
+		
+		if(!isCacheable(sql)) {
+			return single(em, query.getClazz(), sql, result.values(), o);
+		}
 		
-		javax.persistence.Query q = em.createNativeQuery("SELECT COUNT(*) FROM (" + sqlCount + ") _v");
-		addParams(q, params);
+		List<Object> key = Arrays.asList("single", query.getClazz(), sql, valuesOf(result), 
+				resultOptions(o));
+		return resultCache.get(key, sql, () -> detached(d -> 
+			single(d, query.getClazz(), sql, result.values(), o)));
+	}
+	
+	@Override
+	public void insert(String table, 
+			Map<String, Object> params, 
+			BiConsumer<String, List<Object>> call) {
+		
+		List<String> columns = new ArrayList<String>(params.size());
+		List<Object> values = new ArrayList<Object>(params.size());
+		
+		params.forEach((k, v) -> {
+			columns.add(k);
+			values.add(v);
+		});
 		
-		return ((Number)q.getSingleResult()).longValue();
+		call.accept(insertSQL(table, columns, 1), values);
+		writtenTable(table);
 	}
 	
 	@Override
-	public <T> List<T> list(Query<T> query) {
-		return list(query, null, null);
+	public <T> int upsert(Into<T> into) {
+		NativeSQLResult result = into.to(insertSQL);
+		
+		int[] affected = new int[1];
+		nativeExecute(upsertSQL(into.getClazz(), sqlValues(result)), result.values(), null, affected);
+		return Math.min(affected[0], 1);
 	}
 	
 	@Override
-	public <T> List<T> list(Query<T> query, Long first, Long max) {
-		NativeSQLResult result = query.to(nativeSQL);
-		return list(query.getClazz(), result.sqlValues(), result.values(), first, max);
+	public <T> int upsertAll(Iterable<Into<T>> intos) {
+		return affected(executeBound(intos, into -> {
+			NativeSQLResult result = into.to(insertSQL);
+			return new BoundSQL(upsertSQL(into.getClazz(), sqlValues(result)), result.values());
+		}, null));
 	}
 	
-	private Map<String, Field> getFields(Class<?> clazz) {
-		Map<String, Field> m = new HashMap<String, Field>();
-		
-		for(Field f : clazz.getDeclaredFields()) {
-			m.put(f.getName().toLowerCase(), f);
+	@Override
+	public int upsertAll(String table, Iterable<Map<String, Object>> rows) {
+		return affected(executeBound(rows, row -> {
+			// the same columns in any order share one statement
+			List<String> columns = new ArrayList<String>(row.keySet());
+			Collections.sort(columns);
+			
+			String sql = templateCache.get(TemplateKey.upsert(table, columns), k -> 
+				typed(new UpsertSQL(table, columns, Collections.nCopies(columns.size(), "?")))
+					.render(dialect(), getPrimaryKeyFromTable(table)));
+			
+			List<Object> params = new ArrayList<Object>(columns.size());
+			for(String column : columns) {
+				params.add(row.get(column));
+			}
+			
+			return new BoundSQL(sql, params);
+		}, null));
+	}
+	
+	private String upsertSQL(Class<?> clazz, String insertSql) {
+		return templateCache.get(TemplateKey.upsert(insertSql), k -> {
+			UpsertSQL upsert = UpsertSQL.parse(insertSql);
+			return typed(upsert).render(dialect(), keysOf(clazz, upsert.getTable()));
+		});
+	}
+	
+	private UpsertSQL typed(UpsertSQL upsert) {
+		return dialect() == UpsertDialect.MERGE ? upsert.typed(getTableMetadata(upsert.getTable())) : upsert;
+	}
+	
+	private UpsertDialect dialect() {
+		if(upsertDialect == null) {
+			try {
+				upsertDialect = UpsertDialect.of(
+						em.unwrap(Connection.class).getMetaData().getDatabaseProductName());
+			} catch(SQLException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return upsertDialect;
+	}
+	
+	private PagingDialect pagingDialect() {
+		if(pagingDialect == null) {
+			try {
+				DatabaseMetaData meta = em.unwrap(Connection.class).getMetaData();
+				pagingDialect = PagingDialect.of(meta.getDatabaseProductName(), meta.getDatabaseMajorVersion());
+			} catch(SQLException e) {
+				throw new RuntimeException(e);
+			}
+		}
+		return pagingDialect;
+	}
+	
+	private List<String> keysOf(Class<?> clazz, String table) {
+		try {
+			ClassDescriptor descriptor = em.unwrap(JpaEntityManager.class)
+					.getServerSession().getClassDescriptor(clazz);
+			if(descriptor != null && descriptor.getPrimaryKeyFieldNames() != null 
+					&& !descriptor.getPrimaryKeyFieldNames().isEmpty()) {
+				// mapped fields come qualified by the table
+				return descriptor.getPrimaryKeyFieldNames().stream()
+					.map(f -> f.substring(f.lastIndexOf('.') + 1))
+					.collect(Collectors.toList());
+			}
+		} catch(RuntimeException e) {
+			// not running on EclipseLink, falls back to the table metadata
 		}
 		
-		return m;
+		return getPrimaryKeyFromTable(table);
+	}
+	
+	private int affected(List<int[]> counts) {
+		int affected = 0;
+		for(int[] batch : counts) {
+			for(int count : batch) {
+				// SUCCESS_NO_INFO still means the row was written and MySQL reports an updated row as 2
+				affected += count == Statement.SUCCESS_NO_INFO ? 1 : Math.min(Math.max(count, 0), 1);
+			}
+		}
+		return affected;
 	}
 	
 	@Override
-	public <T, R> List<R> list(Query<T> query, Class<R> clazzR) {
-		Map<String, Field> m = getFields(clazzR);
-		List<R> l = new ArrayList<R>();
+	public int insertAll(String table, Iterable<Map<String, Object>> rows) {
+		Map<List<String>, List<Map<String, Object>>> groups = 
+				new LinkedHashMap<List<String>, List<Map<String, Object>>>();
 		
-		NativeSQLResult result = query.to(nativeSQL);
-		nativeSQL(result.sqlValues(), result.values(), (row) -> {
-			
-			try {
-				R r = clazzR.newInstance();
+		int inserted = 0;
+		
+		// rows sharing a column set in any order share the statement, each group is flushed when full
+		for(Map<String, Object> row : rows) {
+			List<String> columns = new ArrayList<String>(row.keySet());
+			Collections.sort(columns);
 			
-				for(Map.Entry<String, Object> e : row.entrySet()) {
-					
-					Field f = m.get(e.getKey().toLowerCase());
-					
-					if(f != null) {
-						f.setAccessible(true);
-						f.set(r, e.getValue());
-					}
-					
-				}
-				
-				l.add(r);
+			List<Map<String, Object>> group = groups.computeIfAbsent(columns, 
+					c -> new ArrayList<Map<String, Object>>());
+			group.add(row);
 			
-			} catch (Exception e) {
-				throw new RuntimeException(e);
+			if(group.size() >= insertChunk(columns.size())) {
+				inserted += insertGroup(table, columns, group);
+				group.clear();
 			}
-			
-			return true;
-		});
+		}
 		
-		return l;
-	}
+		for(Map.Entry<List<String>, List<Map<String, Object>>> e : groups.entrySet()) {
+			if(!e.getValue().isEmpty()) {
+				inserted += insertGroup(table, e.getKey(), e.getValue());
+			}
+		}
 		
-	@Override
-	public <T> Query<T> query(Class<T> clazz) {
-		return queryBuilder.from(clazz);
+		return inserted;
 	}
 	
-	@SuppressWarnings("unchecked")
-	private <T> T single(Class<T> clazz, String sql, List<Object> params) {
-		try {
-			javax.persistence.Query q = em.createNativeQuery(sql, clazz);
-			q.setMaxResults(1);
-			addParams(q, params);
-			return (T) q.getSingleResult();
-		} catch(NoResultException nre) {
-			return null;
+	private int insertChunk(int columns) {
+		if(insertMaxParams > 0) {
+			return Math.max(1, insertMaxParams / Math.max(1, columns));
 		}
+		return batchSize;
 	}
 	
-	@Override
-	public void nativeSQL(String sql, List<Object> params, RowHandler handler) { 
+	private int insertGroup(String table, List<String> columns, List<Map<String, Object>> rows) {
+		writtenTable(table);
+		
+		List<Object> params = new ArrayList<Object>(columns.size() * 
+				(insertMaxParams > 0 ? rows.size() : 1));
+		
+		if(insertMaxParams > 0) {
+			for(Map<String, Object> row : rows) {
+				for(String column : columns) {
+					params.add(row.get(column));
+				}
+			}
+			
+			String sql = insertSQL(table, columns, rows.size());
+			
+			int[] inserted = new int[1];
+			nativeExecute(sql, params, null, inserted);
+			return inserted[0];
+		}
+		
+		String sql = insertSQL(table, columns, 1);
+		
 		PreparedStatement st = null;
-		ResultSet rs = null;
+		boolean failed = false;
+		StatementTimer timer = timer(StatementEvent.Type.BATCH, sql, null);
 		try {
-			st = em.unwrap(Connection.class).prepareStatement(sql);
+			st = prepareStatement(sql, false);
 			
-			addParams(st, params);
+			for(Map<String, Object> row : rows) {
+				params.clear();
+				for(String column : columns) {
+					params.add(row.get(column));
+				}
+				addParams(st, params);
+				st.addBatch();
+			}
 			
-			rs = st.executeQuery();
+			int inserted = 0;
+			for(int count : st.executeBatch()) {
+				// SUCCESS_NO_INFO still means the row went in
+				inserted += count == Statement.SUCCESS_NO_INFO ? 1 : Math.max(count, 0);
+			}
+			
+			if(timer != null) {
+				timer.addBinds(rows.size() * columns.size());
+				timer.addRows(inserted);
+			}
+			fire(timer, null);
 			
-			forEachHandler(rs, handler);
+			return inserted;
 			
 		} catch(Exception e) {
-			// TODO: logger
-			System.out.println("SQL:" + sql + "\nParams:" + params);
-			e.printStackTrace();
+			failed = true;
+			
+			fire(timer, e);
+			logError(sql, params, e);
 			throw new RuntimeException(e);
 			
 		} finally {
 			
-			if(rs != null) {
-				try {
-					rs.close();
-				} catch(Exception e) {
-					// TODO: logger
-					e.printStackTrace();
-				}
-			}
 			if(st != null) {
-				try {
-					st.close();
-				} catch(Exception e) {
-					// TODO: logger
-					e.printStackTrace();
-				}
+				releaseStatement(st, failed);
 			}
 		}
 	}
-
-	private void forEachHandler(ResultSet rs, RowHandler handler) throws SQLException {
-		ResultSetMetaData md = rs.getMetaData();
-		while(rs.next()) {
-			Map<String, Object> row = new HashMap<String, Object>();
+	
+	private String insertSQL(String table, List<String> columns, int rows) {
+		return templateCache.get(TemplateKey.insert(table, columns, rows), k -> {
+			StringBuilder sb = new StringBuilder();
 			
-			for(int j = 1; j <= md.getColumnCount(); j++) {
-				if(BINARY_TYPES.contains(md.getColumnType(j))) {
-					row.put(md.getColumnName(j), rs.getBinaryStream(j));
-				} else {
-					row.put(md.getColumnName(j), rs.getObject(j));
+			sb.append("insert into ");
+			sb.append(table);
+			sb.append(columns.stream()
+				     .collect(Collectors.joining(", ", " (", ")")));
+			
+			String values = columns.stream()
+				     .map(i -> "?")
+				     .collect(Collectors.joining(", ", "(", ")"));
+			
+			sb.append(" values ");
+			for(int i = 0; i < rows; i++) {
+				if(i > 0) {
+					sb.append(", ");
 				}
+				sb.append(values);
 			}
 			
-			if(!handler.execute(row)) {
-				break;
-			}
-		}
-	}
-	
-	@Override
-	public <T> T single(Query<T> query) {
-		NativeSQLResult result = query.to(nativeSQL);
-		return single(query.getClazz(), result.sqlValues(), result.values());
-	}
-	
-	@Override
-	public void insert(String table, 
-			Map<String, Object> params, 
-			BiConsumer<String, List<Object>> call) {
-		
-		List<String> columns = new ArrayList<String>();
-		List<Object> values = new ArrayList<Object>();
-		List<String> p = new ArrayList<String>();
-		
-		params.forEach((k, v) -> {
-			columns.add(k);
-			values.add(v);
-			p.add("?");
+			return sb.toString();
 		});
-		
-		StringBuilder sb = new StringBuilder();
-		
-		sb.append("insert into ");
-		sb.append(table);
-		sb.append(columns.stream()
-			     .map(i -> i.toString())
-			     .collect(Collectors.joining(", ", " (", ")")));
-		sb.append(p.stream()
-			     .map(i -> i.toString())
-			     .collect(Collectors.joining(", ", " values (", ")")));
-		
-		call.accept(sb.toString(), values);
 	}
 	
 	@Override
@@ -492,6 +2412,7 @@ public class DAOImpl implements DAO {
 			     .collect(Collectors.joining(" and ", "where ", "")));
 		
 		call.accept(sb.toString(), values);
+		writtenTable(table);
 	}
 	
 	@Override
@@ -516,22 +2437,35 @@ public class DAOImpl implements DAO {
 			     .collect(Collectors.joining(" and ", " where ", " ")));
 		
 		call.accept(sb.toString(), values);
+		writtenTable(table);
 	}
 	
 	@Override
 	public void nativeExecute(String sql, List<Object> params, RowHandler handlerKeys) { 
+		nativeExecute(sql, params, handlerKeys, null);
+	}
+	
+	private void nativeExecute(String sql, List<Object> params, RowHandler handlerKeys, int[] affectedRows) { 
+		written(sql);
+		
 		PreparedStatement st = null;
 		ResultSet rs = null;
+		boolean failed = false;
+		StatementTimer timer = timer(StatementEvent.Type.UPDATE, sql, params);
 		try {
-			st = em.unwrap(Connection.class)
-					.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+			st = prepareStatement(sql, handlerKeys != null);
 			
 			addParams(st, params);
 			
-			// TODO: logger
-			// System.out.println("SQL:" + sql + " params: " + params);
+			int affected = st.executeUpdate();
 			
-			st.executeUpdate();
+			if(affectedRows != null) {
+				affectedRows[0] = affected;
+			}
+			
+			if(timer != null) {
+				timer.addRows(affected);
+			}
 
 			if(handlerKeys != null) {
 				rs = st.getGeneratedKeys();
@@ -540,11 +2474,13 @@ public class DAOImpl implements DAO {
 				}
 			}
 			
-		} catch(Exception e) {
+			fire(timer, null);
 			
-			// TODO: logger
-			System.out.println("SQL:" + sql + " params: " + params);
+		} catch(Exception e) {
+			failed = true;
 			
+			fire(timer, e);
+			logError(sql, params, e);
 			throw new RuntimeException(e);
 			
 		} finally {
@@ -553,105 +2489,203 @@ public class DAOImpl implements DAO {
 				try {
 					rs.close();
 				} catch(Exception e) {
-					// TODO: logger
-					e.printStackTrace();
+					logger.log(Level.WARNING, "Could not close the result set", e);
 				}
 			}
 			
 			if(st != null) {
-				try {
-					st.close();
-				} catch(Exception e) {
-					// TODO: logger
-					e.printStackTrace();
-				}
+				releaseStatement(st, failed);
 			}
 		}
 	}
 	
-	@Override
-	public List<String> getColumnsFromTable(String tableName) {
-		List<String> names = new ArrayList<String>();
+	private <E> List<int[]> nativeExecuteBatch(Iterable<E> items, 
+			Function<E, NativeSQLResult> render, RowHandler handlerKeys) {
+		return executeBound(items, item -> {
+			NativeSQLResult result = render.apply(item);
+			return new BoundSQL(sqlValues(result), result.values());
+		}, handlerKeys);
+	}
+	
+	private <E> List<int[]> executeBound(Iterable<E> items, 
+			Function<E, BoundSQL> render, RowHandler handlerKeys) {
 		
-		Connection conn = null;
-		ResultSet rs = null;
+		List<int[]> counts = new ArrayList<int[]>();
+		
+		PreparedStatement st = null;
+		String sql = null;
+		List<Object> params = null;
+		int pending = 0;
+		boolean failed = false;
+		StatementTimer timer = null;
 		try {
-			conn = em.unwrap(Connection.class);
-			
-			DatabaseMetaData meta = conn.getMetaData();
-			String[] tableAttrs = getTableAttrs(tableName.toLowerCase());
-			rs = meta.getColumns(null, tableAttrs[0], tableAttrs[1], null);
+			for(E item : items) {
+				BoundSQL bound = render.apply(item);
+				String itemSql = bound.sql;
+				params = bound.params;
+				
+				// consecutive items with the same sql share the statement, order is kept
+				if(st != null && !itemSql.equals(sql)) {
+					// a full batch was already executed, an empty one would add an empty count
+					if(pending > 0) {
+						executeBatch(st, counts, handlerKeys, timer);
+						timer = null;
+						pending = 0;
+					}
+					
+					releaseStatement(st, false);
+					st = null;
+				}
+				
+				if(st == null) {
+					sql = itemSql;
+					written(sql);
+					st = prepareStatement(sql, handlerKeys != null);
+				}
+				
+				if(timer == null) {
+					timer = timer(StatementEvent.Type.BATCH, sql, null);
+				}
+				if(timer != null && params != null) {
+					timer.addBinds(params.size());
+				}
+				
+				addParams(st, params);
+				st.addBatch();
+				pending++;
+				
+				if(pending >= batchSize) {
+					executeBatch(st, counts, handlerKeys, timer);
+					timer = null;
+					pending = 0;
+				}
+			}
 			
-			while (rs.next()) {
-				names.add(rs.getString("COLUMN_NAME").toLowerCase());
+			if(pending > 0) {
+				executeBatch(st, counts, handlerKeys, timer);
+				timer = null;
 			}
 			
 		} catch(Exception e) {
+			failed = true;
+			
+			fire(timer, e);
+			logError(sql, params, e);
 			throw new RuntimeException(e);
 			
 		} finally {
 			
-			try {
-				if(rs != null) {
-					rs.close();
-				}
-			} catch(Exception e) {
-				// TODO: logger
-				e.printStackTrace();
+			if(st != null) {
+				releaseStatement(st, failed);
 			}
 		}
-			
-		return names;
+		
+		return counts;
 	}
 	
-	@Override
-	public List<String> getPrimaryKeyFromTable(String tableName) {
-		List<String> names = new ArrayList<String>();
+	private void executeBatch(PreparedStatement st, List<int[]> counts, 
+			RowHandler handlerKeys, StatementTimer timer) throws SQLException {
+		int[] result = st.executeBatch();
+		counts.add(result);
+		closeStreams();
 		
-		Connection conn = null;
-		ResultSet rs = null;
-		try {
-			conn = em.unwrap(Connection.class);
-			
-			DatabaseMetaData meta = conn.getMetaData();
-			String[] tableAttrs = getTableAttrs(tableName.toLowerCase());
-			rs = meta.getPrimaryKeys(null, tableAttrs[0], tableAttrs[1]);
-			
-			while (rs.next()) {
-				names.add(rs.getString("COLUMN_NAME").toLowerCase());
+		if(timer != null) {
+			for(int count : result) {
+				if(count > 0) {
+					timer.addRows(count);
+				}
 			}
-			
-		} catch(Exception e) {
-			throw new RuntimeException(e);
-			
-		} finally {
-			
-			try {
-				if(rs != null) {
+		}
+		
+		if(handlerKeys != null) {
+			ResultSet rs = st.getGeneratedKeys();
+			if(rs != null) {
+				try {
+					forEachHandler(rs, handlerKeys);
+				} finally {
 					rs.close();
 				}
-			} catch(Exception e) {
-				// TODO: logger
-				e.printStackTrace();
 			}
 		}
-			
-		return names;
+		
+		fire(timer, null);
 	}
-
-	private String[] getTableAttrs(String tableName) {
-		String catalog = null;
-		String table = tableName;
+	
+	@Override
+	public List<String> getColumnsFromTable(String tableName) {
+		return new ArrayList<String>(getTableMetadata(tableName).getColumnNames());
+	}
+	
+	@Override
+	public List<String> getPrimaryKeyFromTable(String tableName) {
+		return new ArrayList<String>(getTableMetadata(tableName).getPrimaryKey());
+	}
+	
+	@Override
+	public TableMetadata getTableMetadata(String tableName) {
+		return metadataCache.get(em.unwrap(Connection.class), tableName);
+	}
+	
+	@Override
+	public int preloadMetadata(String schema) {
+		return metadataCache.preload(em.unwrap(Connection.class), schema);
+	}
+	
+	@Override
+	public void invalidateMetadata(String tableName) {
+		metadataCache.invalidate(tableName);
+	}
+	
+	@Override
+	public void invalidateMetadata() {
+		metadataCache.invalidateAll();
+	}
+	
+	private static class PendingWrites {
 		
-		if(tableName.contains(".")) {
-			String[] parts = tableName.split(Pattern.quote("."));
-			if(parts.length == 2) {
-				catalog = parts[0];
-				table = parts[1];
-			}
+		private final EntityManager em;
+		private int count;
+		
+		PendingWrites(EntityManager em) {
+			this.em = em;
+		}
+		
+	}
+	
+	private static class Count {
+		
+		private final Long value;
+		private final CountType type;
+		
+		Count(Long value, CountType type) {
+			this.value = value;
+			this.type = type;
+		}
+		
+	}
+	
+	private static class BoundSQL {
+		
+		private final String sql;
+		private final List<Object> params;
+		
+		BoundSQL(String sql, List<Object> params) {
+			this.sql = sql;
+			this.params = params;
+		}
+		
+	}
+	
+	private static class RenderedSQL {
+		
+		private final String sqlValues;
+		private final int params;
+		
+		RenderedSQL(String sqlValues, int params) {
+			this.sqlValues = sqlValues;
+			this.params = params;
 		}
 		
-		return new String[] { catalog, table };
 	}
 
 }
@@ -0,0 +1,237 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.persistence.EntityManager;
+
+import org.eclipse.persistence.descriptors.CMPPolicy;
+import org.eclipse.persistence.descriptors.ClassDescriptor;
+import org.eclipse.persistence.descriptors.TimestampLockingPolicy;
+import org.eclipse.persistence.descriptors.VersionLockingPolicy;
+import org.eclipse.persistence.internal.sessions.AbstractSession;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.mappings.DatabaseMapping;
+import org.eclipse.persistence.mappings.foundation.AbstractDirectMapping;
+import org.eclipse.persistence.sessions.server.ServerSession;
+
+class EntityMapping {
+
+	private final Class<?> clazz;
+	private final AbstractSession session;
+	private final ClassDescriptor descriptor;
+	private final String table;
+	private final List<AbstractDirectMapping> keys;
+	private final List<AbstractDirectMapping> columns;
+	private final VersionLockingPolicy policy;
+	private final AbstractDirectMapping version;
+
+	private EntityMapping(Class<?> clazz, AbstractSession session, ClassDescriptor descriptor) {
+		this.clazz = clazz;
+		this.session = session;
+		this.descriptor = descriptor;
+		this.table = descriptor.getTableName();
+		this.keys = new ArrayList<AbstractDirectMapping>();
+		this.columns = new ArrayList<AbstractDirectMapping>();
+
+		if(descriptor.getOptimisticLockingPolicy() instanceof VersionLockingPolicy) {
+			this.policy = (VersionLockingPolicy)descriptor.getOptimisticLockingPolicy();
+			this.version = policy.getVersionMapping();
+		} else {
+			this.policy = null;
+			this.version = null;
+		}
+
+		// relationships and embeddables are left to em.merge
+		for(DatabaseMapping m : descriptor.getMappings()) {
+			if(!m.isAbstractDirectMapping() || m == version) {
+				continue;
+			}
+
+			if(m.isPrimaryKeyMapping()) {
+				keys.add((AbstractDirectMapping)m);
+			} else if(!m.isReadOnly()) {
+				columns.add((AbstractDirectMapping)m);
+			}
+		}
+	}
+
+	static EntityMapping of(EntityManager em, Class<?> clazz) {
+		ServerSession session = em.unwrap(JpaEntityManager.class).getServerSession();
+
+		ClassDescriptor descriptor = session.getClassDescriptor(clazz);
+		if(descriptor == null) {
+			throw new IllegalArgumentException("Not an entity: " + clazz.getName());
+		}
+
+		return new EntityMapping(clazz, session, descriptor);
+	}
+
+	Class<?> getClazz() {
+		return clazz;
+	}
+
+	String getTable() {
+		return table;
+	}
+
+	// embedded ids have no direct key mapping
+	boolean isDirect() {
+		return !keys.isEmpty();
+	}
+
+	List<String> getKeyColumns() {
+		List<String> names = new ArrayList<String>(keys.size());
+		for(AbstractDirectMapping m : keys) {
+			names.add(m.getField().getName());
+		}
+		return names;
+	}
+
+	String getKeyColumn() {
+		if(keys.size() != 1) {
+			throw new IllegalArgumentException("Only single column keys are supported: " + clazz.getName());
+		}
+		return keys.get(0).getField().getName();
+	}
+
+	Object keyField(Object id) {
+		return keys.get(0).getFieldValue(id, session);
+	}
+
+	// the key of the identity map, composite ids are built as EclipseLink does for find
+	Object cacheKey(Object id) {
+		if(keys.size() == 1) {
+			return keyField(id);
+		}
+		CMPPolicy cmp = descriptor.getCMPPolicy();
+		return cmp != null ? cmp.createPrimaryKeyFromId(id, session) : null;
+	}
+
+	boolean isVersioned() {
+		return version != null;
+	}
+
+	Map<String, Object> snapshot(Object entity) {
+		Map<String, Object> values = new HashMap<String, Object>();
+		for(AbstractDirectMapping m : columns) {
+			values.put(m.getAttributeName(), copy(m.getAttributeValueFromObject(entity)));
+		}
+		if(version != null) {
+			values.put(version.getAttributeName(), version.getAttributeValueFromObject(entity));
+		}
+		return values;
+	}
+
+	List<String> changed(Object entity, Map<String, Object> snapshot) {
+		List<String> attributes = new ArrayList<String>();
+		for(AbstractDirectMapping m : changedMappings(entity, snapshot)) {
+			attributes.add(m.getAttributeName());
+		}
+		return attributes;
+	}
+
+	// column values of the changed attributes, converted as EclipseLink writes them
+	Map<String, Object> changedColumns(Object entity, Map<String, Object> snapshot) {
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+		for(AbstractDirectMapping m : changedMappings(entity, snapshot)) {
+			values.put(m.getField().getName(), m.getFieldValue(m.getAttributeValueFromObject(entity), session));
+		}
+		return values;
+	}
+
+	private List<AbstractDirectMapping> changedMappings(Object entity, Map<String, Object> snapshot) {
+		List<AbstractDirectMapping> changed = new ArrayList<AbstractDirectMapping>();
+		for(AbstractDirectMapping m : columns) {
+			if(!Objects.deepEquals(m.getAttributeValueFromObject(entity), snapshot.get(m.getAttributeName()))) {
+				changed.add(m);
+			}
+		}
+		return changed;
+	}
+
+	Map<String, Object> keyColumns(Object entity) {
+		Map<String, Object> values = new LinkedHashMap<String, Object>();
+		for(AbstractDirectMapping m : keys) {
+			values.put(m.getField().getName(), m.getFieldValue(m.getAttributeValueFromObject(entity), session));
+		}
+		return values;
+	}
+
+	String getVersionColumn() {
+		return version.getField().getName();
+	}
+
+	Object getVersion(Map<String, Object> snapshot) {
+		return snapshot.get(version.getAttributeName());
+	}
+
+	Object versionField(Object value) {
+		return version.getFieldValue(value, session);
+	}
+
+	void setVersion(Object entity, Object value) {
+		version.setAttributeValueInObject(entity, value);
+	}
+
+	Object nextVersion(Object current) {
+		if(current == null) {
+			throw new IllegalStateException("Version is null: " + clazz.getName());
+		}
+
+		if(current instanceof Timestamp) {
+			return now();
+		}
+		if(current instanceof Date) {
+			return new Date(now().getTime());
+		}
+		if(current instanceof Long) {
+			return (Long)current + 1L;
+		}
+		if(current instanceof Integer) {
+			return (Integer)current + 1;
+		}
+		if(current instanceof Short) {
+			return (short)((Short)current + 1);
+		}
+		if(current instanceof BigInteger) {
+			return ((BigInteger)current).add(BigInteger.ONE);
+		}
+		if(current instanceof BigDecimal) {
+			return ((BigDecimal)current).add(BigDecimal.ONE);
+		}
+
+		throw new IllegalStateException("Unsupported version type: " + current.getClass().getName());
+	}
+
+	// the same clock EclipseLink uses for the policy, the database unless configured local
+	private Timestamp now() {
+		if(policy instanceof TimestampLockingPolicy && ((TimestampLockingPolicy)policy).usesLocalTime()) {
+			return new Timestamp(System.currentTimeMillis());
+		}
+		return session.getDatasourcePlatform().getTimestampFromServer(session, session.getName());
+	}
+
+	// mutable values are copied so later changes to the entity show up as differences
+	private Object copy(Object value) {
+		if(value instanceof Date) {
+			return ((Date)value).clone();
+		}
+		if(value instanceof byte[]) {
+			return ((byte[])value).clone();
+		}
+		if(value instanceof char[]) {
+			return ((char[])value).clone();
+		}
+		return value;
+	}
+
+}
@@ -0,0 +1,24 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.List;
+
+import com.naskar.fluentquery.jpa.dao.KeysetPage;
+
+public class KeysetPageImpl<T> extends SubListImpl<T> implements KeysetPage<T> {
+	
+	private String next;
+	
+	public KeysetPageImpl(List<T> delegate, Long max, String next) {
+		super(delegate, null, max, -1L);
+		this.next = next;
+	}
+	
+	public String getNext() {
+		return next;
+	}
+	
+	public boolean hasNext() {
+		return next != null;
+	}
+
+}
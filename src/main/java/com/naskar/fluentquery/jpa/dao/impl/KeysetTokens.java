@@ -0,0 +1,133 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Date;
+import java.util.List;
+
+final class KeysetTokens {
+
+	private static final byte LONG = 'L';
+	private static final byte DOUBLE = 'D';
+	private static final byte DECIMAL = 'B';
+	private static final byte STRING = 'S';
+	private static final byte BOOLEAN = 'Z';
+	private static final byte DATE = 'T';
+	private static final byte TIMESTAMP = 'P';
+
+	private KeysetTokens() {
+	}
+
+	static String encode(List<Object> values) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+			DataOutputStream out = new DataOutputStream(bytes);
+
+			out.writeShort(values.size());
+
+			for(Object v : values) {
+				if(v instanceof Long || v instanceof Integer || v instanceof Short || v instanceof Byte) {
+					out.writeByte(LONG);
+					out.writeLong(((Number)v).longValue());
+
+				} else if(v instanceof Double || v instanceof Float) {
+					out.writeByte(DOUBLE);
+					out.writeDouble(((Number)v).doubleValue());
+
+				} else if(v instanceof Number) {
+					out.writeByte(DECIMAL);
+					out.writeUTF(v.toString());
+
+				} else if(v instanceof String) {
+					out.writeByte(STRING);
+					out.writeUTF((String)v);
+
+				} else if(v instanceof Boolean) {
+					out.writeByte(BOOLEAN);
+					out.writeBoolean((Boolean)v);
+
+				} else if(v instanceof Timestamp) {
+					out.writeByte(TIMESTAMP);
+					out.writeLong(((Timestamp)v).getTime());
+					out.writeInt(((Timestamp)v).getNanos());
+
+				} else if(v instanceof Date) {
+					out.writeByte(DATE);
+					out.writeLong(((Date)v).getTime());
+
+				} else {
+					throw new IllegalArgumentException("Unsupported keyset value: " +
+							(v == null ? "null" : v.getClass().getName()));
+				}
+			}
+
+			out.flush();
+
+			return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+
+		} catch(IOException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	static List<Object> decode(String token) {
+		try {
+			DataInputStream in = new DataInputStream(
+					new ByteArrayInputStream(Base64.getUrlDecoder().decode(token)));
+
+			int size = in.readShort();
+			List<Object> values = new ArrayList<Object>(size);
+
+			for(int i = 0; i < size; i++) {
+				byte type = in.readByte();
+				switch(type) {
+					case LONG:
+						values.add(in.readLong());
+						break;
+
+					case DOUBLE:
+						values.add(in.readDouble());
+						break;
+
+					case DECIMAL:
+						values.add(new BigDecimal(in.readUTF()));
+						break;
+
+					case STRING:
+						values.add(in.readUTF());
+						break;
+
+					case BOOLEAN:
+						values.add(in.readBoolean());
+						break;
+
+					case TIMESTAMP:
+						Timestamp ts = new Timestamp(in.readLong());
+						ts.setNanos(in.readInt());
+						values.add(ts);
+						break;
+
+					case DATE:
+						values.add(new Date(in.readLong()));
+						break;
+
+					default:
+						throw new IllegalArgumentException("Invalid keyset token: " + token);
+				}
+			}
+
+			return values;
+
+		} catch(IOException | IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid keyset token: " + token, e);
+		}
+	}
+
+}
@@ -0,0 +1,194 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+public class LRUCache<K, V> {
+
+	private final int maxSize;
+	private final long ttlMillis;
+	private final Map<K, Node<V>> map;
+
+	private final AtomicLong hits;
+	private final AtomicLong misses;
+	private final AtomicLong evictions;
+	private final AtomicLong expirations;
+
+	private BiConsumer<K, V> removalListener;
+
+	public LRUCache(int maxSize) {
+		this(maxSize, 0L);
+	}
+
+	public LRUCache(int maxSize, long ttlMillis) {
+		if(maxSize < 1) {
+			throw new IllegalArgumentException("maxSize must be greater than zero: " + maxSize);
+		}
+
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+		this.evictions = new AtomicLong();
+		this.expirations = new AtomicLong();
+
+		this.map = new LinkedHashMap<K, Node<V>>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Node<V>> eldest) {
+				boolean remove = size() > LRUCache.this.maxSize;
+				if(remove) {
+					evictions.incrementAndGet();
+					notifyRemoval(eldest.getKey(), eldest.getValue().value);
+				}
+				return remove;
+			}
+		};
+	}
+
+	public void setRemovalListener(BiConsumer<K, V> removalListener) {
+		this.removalListener = removalListener;
+	}
+
+	public V get(K key) {
+		V value = null;
+		synchronized (map) {
+			Node<V> node = map.get(key);
+			if(node != null) {
+				if(node.isExpired(System.currentTimeMillis())) {
+					map.remove(key);
+					expirations.incrementAndGet();
+					notifyRemoval(key, node.value);
+				} else {
+					value = node.value;
+				}
+			}
+		}
+
+		if(value != null) {
+			hits.incrementAndGet();
+		} else {
+			misses.incrementAndGet();
+		}
+
+		return value;
+	}
+
+	public V get(K key, Function<K, V> loader) {
+		V value = get(key);
+
+		if(value == null) {
+			// the loader runs outside the lock, concurrent misses may load twice
+			value = loader.apply(key);
+			if(value != null) {
+				put(key, value);
+			}
+		}
+
+		return value;
+	}
+
+	public void put(K key, V value) {
+		put(key, value, ttlMillis);
+	}
+
+	public void put(K key, V value, long ttlMillis) {
+		long expiresAt = ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE;
+
+		synchronized (map) {
+			Node<V> old = map.put(key, new Node<V>(value, expiresAt));
+			if(old != null && old.value != value) {
+				notifyRemoval(key, old.value);
+			}
+		}
+	}
+
+	public V remove(K key) {
+		synchronized (map) {
+			Node<V> old = map.remove(key);
+			if(old != null) {
+				notifyRemoval(key, old.value);
+				return old.value;
+			}
+			return null;
+		}
+	}
+
+	public void clear() {
+		synchronized (map) {
+			if(removalListener != null) {
+				List<Map.Entry<K, Node<V>>> entries = new ArrayList<Map.Entry<K, Node<V>>>(map.entrySet());
+				map.clear();
+				entries.forEach(e -> notifyRemoval(e.getKey(), e.getValue().value));
+			} else {
+				map.clear();
+			}
+		}
+	}
+
+	public int size() {
+		synchronized (map) {
+			return map.size();
+		}
+	}
+
+	public int getMaxSize() {
+		return maxSize;
+	}
+
+	public long getTtlMillis() {
+		return ttlMillis;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public long getEvictions() {
+		return evictions.get();
+	}
+
+	public long getExpirations() {
+		return expirations.get();
+	}
+
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0.0 : (double)h / total;
+	}
+
+	private void notifyRemoval(K key, V value) {
+		if(removalListener != null) {
+			removalListener.accept(key, value);
+		}
+	}
+
+	private static class Node<V> {
+
+		private final V value;
+		private final long expiresAt;
+
+		Node(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+		boolean isExpired(long now) {
+			return now >= expiresAt;
+		}
+
+	}
+
+}
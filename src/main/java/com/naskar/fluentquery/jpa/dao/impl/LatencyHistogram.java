@@ -0,0 +1,102 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+public class LatencyHistogram {
+
+	// 8 linear sub-buckets per power of two, values are kept within 12.5%
+	private static final int SUB_BITS = 3;
+	private static final int SUB_COUNT = 1 << SUB_BITS;
+	private static final int BUCKETS = (64 - SUB_BITS + 1) << SUB_BITS;
+
+	private final AtomicLongArray counts;
+	private final LongAdder count;
+	private final LongAdder sum;
+	private final AtomicLong max;
+
+	public LatencyHistogram() {
+		this.counts = new AtomicLongArray(BUCKETS);
+		this.count = new LongAdder();
+		this.sum = new LongAdder();
+		this.max = new AtomicLong();
+	}
+
+	public void record(long value) {
+		if(value < 0) {
+			return;
+		}
+
+		counts.incrementAndGet(index(value));
+		count.increment();
+		sum.add(value);
+
+		long m = max.get();
+		while(value > m && !max.compareAndSet(m, value)) {
+			m = max.get();
+		}
+	}
+
+	public long getCount() {
+		return count.sum();
+	}
+
+	public long getMax() {
+		return max.get();
+	}
+
+	public double getMean() {
+		long c = count.sum();
+		return c == 0 ? 0.0 : (double)sum.sum() / c;
+	}
+
+	public long getPercentile(double percentile) {
+		long total = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			total += counts.get(i);
+		}
+		if(total == 0) {
+			return 0L;
+		}
+
+		long rank = (long)Math.ceil(total * percentile / 100.0);
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++) {
+			seen += counts.get(i);
+			if(seen >= rank) {
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+
+		return max.get();
+	}
+
+	public void reset() {
+		for(int i = 0; i < BUCKETS; i++) {
+			counts.set(i, 0L);
+		}
+		count.reset();
+		sum.reset();
+		max.set(0L);
+	}
+
+	static int index(long value) {
+		if(value < SUB_COUNT) {
+			return (int)value;
+		}
+		int exp = 63 - Long.numberOfLeadingZeros(value);
+		int sub = (int)((value >>> (exp - SUB_BITS)) & (SUB_COUNT - 1));
+		return ((exp - SUB_BITS + 1) << SUB_BITS) + sub;
+	}
+
+	static long upperBound(int index) {
+		if(index < SUB_COUNT) {
+			return index;
+		}
+		int exp = (index >>> SUB_BITS) + SUB_BITS - 1;
+		int sub = index & (SUB_COUNT - 1);
+		return ((SUB_COUNT + sub + 1L) << (exp - SUB_BITS)) - 1;
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.Pattern;
+
+import com.naskar.fluentquery.jpa.dao.ColumnMetadata;
+import com.naskar.fluentquery.jpa.dao.TableMetadata;
+
+public class MetadataCache {
+
+	private LRUCache<String, TableMetadata> tables;
+
+	public MetadataCache(int maxSize, long ttlMillis) {
+		this.tables = new LRUCache<String, TableMetadata>(maxSize, ttlMillis);
+	}
+
+	public TableMetadata get(Connection conn, String tableName) {
+		String key = tableName.toLowerCase();
+
+		TableMetadata table = tables.get(key);
+		if(table == null) {
+			try {
+				table = load(conn.getMetaData(), key);
+			} catch(SQLException e) {
+				throw new RuntimeException(e);
+			}
+			// a missing table may be created later, it is looked up again
+			if(!table.getColumns().isEmpty()) {
+				tables.put(key, table);
+			}
+		}
+
+		return table;
+	}
+
+	public void invalidate(String tableName) {
+		tables.remove(tableName.toLowerCase());
+	}
+
+	public void invalidateAll() {
+		tables.clear();
+	}
+
+	public LRUCache<String, TableMetadata> getTables() {
+		return tables;
+	}
+
+	public int preload(Connection conn, String schema) {
+		try {
+			DatabaseMetaData meta = conn.getMetaData();
+
+			// one catalog round trip for every column and one for every key
+			Map<List<String>, List<ColumnMetadata>> columns = new LinkedHashMap<List<String>, List<ColumnMetadata>>();
+
+			ResultSet rs = meta.getColumns(null, schema, "%", null);
+			try {
+				while(rs.next()) {
+					List<String> table = Arrays.asList(rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"));
+					columns.computeIfAbsent(table, t -> new ArrayList<ColumnMetadata>()).add(columnOf(rs));
+				}
+			} finally {
+				rs.close();
+			}
+
+			Map<List<String>, List<String>> keys = loadPrimaryKeys(meta, schema, columns.keySet());
+
+			// the bare name also finds the table unless another schema has one with the same name
+			Map<String, Integer> names = new HashMap<String, Integer>();
+			for(List<String> table : columns.keySet()) {
+				names.merge(table.get(1).toLowerCase(), 1, Integer::sum);
+			}
+
+			for(Map.Entry<List<String>, List<ColumnMetadata>> e : columns.entrySet()) {
+				String name = e.getKey().get(1).toLowerCase();
+				String key = e.getKey().get(0) != null ? e.getKey().get(0).toLowerCase() + "." + name : name;
+				List<String> primaryKey = keys.getOrDefault(e.getKey(), Collections.<String>emptyList());
+
+				tables.put(key, new TableMetadata(key, e.getValue(), primaryKey));
+				if(!key.equals(name) && names.get(name) == 1) {
+					tables.put(name, new TableMetadata(name, e.getValue(), primaryKey));
+				}
+			}
+
+			return columns.size();
+
+		} catch(SQLException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private Map<List<String>, List<String>> loadPrimaryKeys(DatabaseMetaData meta, String schema, 
+			Collection<List<String>> tables) throws SQLException {
+		Map<List<String>, List<String>> result = new HashMap<List<String>, List<String>>();
+
+		try {
+			Map<List<String>, Map<Short, String>> keys = new HashMap<List<String>, Map<Short, String>>();
+
+			ResultSet rs = meta.getPrimaryKeys(null, schema, null);
+			try {
+				while(rs.next()) {
+					List<String> table = Arrays.asList(rs.getString("TABLE_SCHEM"), rs.getString("TABLE_NAME"));
+					keys.computeIfAbsent(table, t -> new TreeMap<Short, String>())
+						.put(rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME").toLowerCase());
+				}
+			} finally {
+				rs.close();
+			}
+
+			keys.forEach((table, names) -> result.put(table, new ArrayList<String>(names.values())));
+
+		} catch(SQLException e) {
+			// drivers that require a table name are asked once per table
+			result.clear();
+			for(List<String> table : tables) {
+				result.put(table, loadPrimaryKey(meta, table.get(0), table.get(1)));
+			}
+		}
+
+		return result;
+	}
+
+	private TableMetadata load(DatabaseMetaData meta, String tableName) throws SQLException {
+		String[] tableAttrs = getTableAttrs(tableName);
+		for(int i = 0; i < tableAttrs.length; i++) {
+			tableAttrs[i] = identifier(meta, tableAttrs[i]);
+		}
+
+		List<ColumnMetadata> columns = new ArrayList<ColumnMetadata>();
+
+		ResultSet rs = meta.getColumns(null, tableAttrs[0], tableAttrs[1], null);
+		try {
+			while(rs.next()) {
+				columns.add(columnOf(rs));
+			}
+		} finally {
+			rs.close();
+		}
+
+		return new TableMetadata(tableName, columns, loadPrimaryKey(meta, tableAttrs[0], tableAttrs[1]));
+	}
+
+	private List<String> loadPrimaryKey(DatabaseMetaData meta, String schema, String table) throws SQLException {
+		Map<Short, String> names = new TreeMap<Short, String>();
+
+		ResultSet rs = meta.getPrimaryKeys(null, schema, table);
+		try {
+			while(rs.next()) {
+				names.put(rs.getShort("KEY_SEQ"), rs.getString("COLUMN_NAME").toLowerCase());
+			}
+		} finally {
+			rs.close();
+		}
+
+		return new ArrayList<String>(names.values());
+	}
+
+	private ColumnMetadata columnOf(ResultSet rs) throws SQLException {
+		return new ColumnMetadata(
+			rs.getString("COLUMN_NAME").toLowerCase(),
+			rs.getInt("DATA_TYPE"),
+			rs.getString("TYPE_NAME"),
+			rs.getInt("NULLABLE") != DatabaseMetaData.columnNoNulls,
+			rs.getInt("COLUMN_SIZE"),
+			rs.getInt("DECIMAL_DIGITS"));
+	}
+
+	// unquoted names are stored in the case the database folds them to
+	private String identifier(DatabaseMetaData meta, String name) throws SQLException {
+		if(name == null) {
+			return null;
+		}
+		if(meta.storesUpperCaseIdentifiers()) {
+			return name.toUpperCase();
+		}
+		if(meta.storesLowerCaseIdentifiers()) {
+			return name.toLowerCase();
+		}
+		return name;
+	}
+
+	private String[] getTableAttrs(String tableName) {
+		String catalog = null;
+		String table = tableName;
+
+		if(tableName.contains(".")) {
+			String[] parts = tableName.split(Pattern.quote("."));
+			if(parts.length == 2) {
+				catalog = parts[0];
+				table = parts[1];
+			}
+		}
+
+		return new String[] { catalog, table };
+	}
+
+}
@@ -0,0 +1,78 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import com.naskar.fluentquery.jpa.dao.DAOListener;
+import com.naskar.fluentquery.jpa.dao.StatementEvent;
+
+public class MetricsListener implements DAOListener {
+
+	private static final int DEFAULT_MAX_STATEMENTS = 1000;
+
+	private final int maxStatements;
+	private ConcurrentMap<String, StatementStats> statements;
+	private LongAdder dropped;
+
+	public MetricsListener() {
+		this(DEFAULT_MAX_STATEMENTS);
+	}
+
+	public MetricsListener(int maxStatements) {
+		if(maxStatements < 1) {
+			throw new IllegalArgumentException("maxStatements must be positive: " + maxStatements);
+		}
+		this.maxStatements = maxStatements;
+		this.statements = new ConcurrentHashMap<String, StatementStats>();
+		this.dropped = new LongAdder();
+	}
+
+	@Override
+	public void onStatement(StatementEvent event) {
+		StatementStats stats = statements.get(event.getFingerprint());
+		if(stats == null) {
+			// ad-hoc sql can produce unbounded fingerprints, past the limit new ones are only counted
+			if(statements.size() >= maxStatements) {
+				dropped.increment();
+				return;
+			}
+			stats = statements.computeIfAbsent(event.getFingerprint(), StatementStats::new);
+		}
+		stats.record(event);
+	}
+
+	public int getMaxStatements() {
+		return maxStatements;
+	}
+
+	// events of fingerprints not tracked because the limit was reached
+	public long getDropped() {
+		return dropped.sum();
+	}
+
+	public StatementStats get(String fingerprint) {
+		return statements.get(fingerprint);
+	}
+
+	public List<StatementStats> getStatements() {
+		return new ArrayList<StatementStats>(statements.values());
+	}
+
+	// the statements with the largest accumulated time first
+	public List<StatementStats> getWorst(int limit) {
+		List<StatementStats> worst = getStatements();
+		worst.sort(Comparator.comparingDouble(
+				(StatementStats s) -> s.getTotal().getMean() * s.getCount()).reversed());
+		return worst.size() > limit ? worst.subList(0, limit) : worst;
+	}
+
+	public void reset() {
+		statements.clear();
+		dropped.reset();
+	}
+
+}
@@ -0,0 +1,208 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+public class ResultCache {
+
+	private static final int TABLES_CACHE_SIZE = 1024;
+
+	private static final String IDENTIFIER = "[\\w.$\"`\\[\\]]+";
+
+	private static final Pattern READ_TABLES = Pattern.compile(
+			"\\b(?:from|join)\\s+((?:" + IDENTIFIER + "(?:\\s+(?:as\\s+)?\\w+)?\\s*,\\s*)*" + IDENTIFIER + ")",
+			Pattern.CASE_INSENSITIVE);
+
+	private static final Pattern WRITE_TABLE = Pattern.compile(
+			"^\\s*(?:insert\\s+into|update|delete\\s+from|delete|merge\\s+into)\\s+(" + IDENTIFIER + ")",
+			Pattern.CASE_INSENSITIVE);
+
+	private LRUCache<List<Object>, Entry> entries;
+	private LRUCache<String, Set<String>> tables;
+	private ConcurrentMap<String, AtomicLong> generations;
+	private AtomicLong generation;
+	private ThreadLocal<Set<String>> pending;
+	private boolean transactional;
+
+	private AtomicLong hits;
+	private AtomicLong misses;
+
+	public ResultCache(int maxSize, long ttlMillis) {
+		this.entries = new LRUCache<List<Object>, Entry>(maxSize, ttlMillis);
+		this.tables = new LRUCache<String, Set<String>>(TABLES_CACHE_SIZE);
+		this.generations = new ConcurrentHashMap<String, AtomicLong>();
+		this.generation = new AtomicLong();
+		this.pending = new ThreadLocal<Set<String>>();
+		this.hits = new AtomicLong();
+		this.misses = new AtomicLong();
+	}
+
+	@SuppressWarnings("unchecked")
+	public <R> R get(List<Object> key, String sql, Supplier<R> loader) {
+		Set<String> read = tables.get(sql, ResultCache::readTables);
+
+		// nothing to invalidate it by, the result is not kept
+		if(read.isEmpty()) {
+			return loader.get();
+		}
+
+		Entry entry = entries.get(key);
+		if(entry != null && entry.isCurrent()) {
+			hits.incrementAndGet();
+			return (R)entry.value;
+		}
+
+		misses.incrementAndGet();
+
+		// versions are taken before the query, a concurrent write leaves the entry stale
+		Entry loaded = new Entry(read);
+		loaded.value = loader.get();
+		entries.put(key, loaded);
+
+		return (R)loaded.value;
+	}
+
+	// true when the current transaction wrote a table the statement reads
+	public boolean isPending(String sql) {
+		Set<String> written = pending.get();
+		if(written == null || written.isEmpty()) {
+			return false;
+		}
+
+		for(String table : tables.get(sql, ResultCache::readTables)) {
+			if(written.contains(table)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	public void written(String sql) {
+		Matcher m = WRITE_TABLE.matcher(sql);
+		if(m.find()) {
+			invalidate(m.group(1));
+		} else {
+			invalidateAll();
+		}
+	}
+
+	public void invalidate(String table) {
+		String name = normalize(table);
+		generationOf(name).incrementAndGet();
+		
+		if(transactional) {
+			Set<String> written = pending.get();
+			if(written == null) {
+				written = new HashSet<String>();
+				pending.set(written);
+			}
+			written.add(name);
+		}
+	}
+
+	// other transactions may have cached the old rows before the commit, they are invalidated again
+	public void completed() {
+		Set<String> written = pending.get();
+		if(written != null) {
+			pending.remove();
+			written.forEach(t -> generationOf(t).incrementAndGet());
+		}
+	}
+
+	void setTransactional(boolean transactional) {
+		this.transactional = transactional;
+	}
+
+	public void invalidateAll() {
+		generation.incrementAndGet();
+		entries.clear();
+	}
+
+	public LRUCache<List<Object>, ?> getEntries() {
+		return entries;
+	}
+
+	public long getHits() {
+		return hits.get();
+	}
+
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h + misses.get();
+		return total == 0 ? 0.0 : (double)h / total;
+	}
+
+	private AtomicLong generationOf(String table) {
+		return generations.computeIfAbsent(table, t -> new AtomicLong());
+	}
+
+	static Set<String> readTables(String sql) {
+		Set<String> read = new LinkedHashSet<String>();
+
+		Matcher m = READ_TABLES.matcher(sql);
+		while(m.find()) {
+			for(String item : m.group(1).split(",")) {
+				String table = item.trim().split("\\s+")[0];
+				if(!table.isEmpty()) {
+					read.add(normalize(table));
+				}
+			}
+		}
+
+		return read.isEmpty() ? Collections.<String>emptySet() : read;
+	}
+
+	// schema and quotes are dropped, a write to s.t invalidates reads of t in any schema
+	static String normalize(String table) {
+		String name = table;
+		int dot = name.lastIndexOf('.');
+		if(dot > -1) {
+			name = name.substring(dot + 1);
+		}
+		return name.replaceAll("[\"`\\[\\]]", "").toLowerCase();
+	}
+
+	private class Entry {
+
+		private final String[] read;
+		private final long[] versions;
+		private final long global;
+		private Object value;
+
+		Entry(Set<String> read) {
+			this.read = read.toArray(new String[read.size()]);
+			this.versions = new long[this.read.length];
+			this.global = generation.get();
+			for(int i = 0; i < this.read.length; i++) {
+				versions[i] = generationOf(this.read[i]).get();
+			}
+		}
+
+		boolean isCurrent() {
+			if(global != generation.get()) {
+				return false;
+			}
+			for(int i = 0; i < read.length; i++) {
+				if(versions[i] != generationOf(read[i]).get()) {
+					return false;
+				}
+			}
+			return true;
+		}
+
+	}
+
+}
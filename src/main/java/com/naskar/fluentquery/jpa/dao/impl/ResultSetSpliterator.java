@@ -0,0 +1,86 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class ResultSetSpliterator<T> extends Spliterators.AbstractSpliterator<T> {
+
+	private static final Logger logger = Logger.getLogger(ResultSetSpliterator.class.getName());
+
+	interface RowReader<T> {
+
+		T read(ResultSet rs) throws SQLException;
+
+	}
+
+	private Statement st;
+	private ResultSet rs;
+	private RowReader<T> reader;
+	private Consumer<Throwable> closeListener;
+	private Throwable error;
+	private boolean closed;
+
+	ResultSetSpliterator(Statement st, ResultSet rs, RowReader<T> reader) {
+		super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+		this.st = st;
+		this.rs = rs;
+		this.reader = reader;
+	}
+
+	void setCloseListener(Consumer<Throwable> closeListener) {
+		this.closeListener = closeListener;
+	}
+
+	@Override
+	public boolean tryAdvance(Consumer<? super T> action) {
+		if(closed) {
+			return false;
+		}
+
+		try {
+			if(!rs.next()) {
+				close();
+				return false;
+			}
+
+			action.accept(reader.read(rs));
+
+			return true;
+
+		} catch(SQLException e) {
+			error = e;
+			close();
+			throw new RuntimeException(e);
+		}
+	}
+
+	void close() {
+		if(closed) {
+			return;
+		}
+		closed = true;
+
+		try {
+			rs.close();
+		} catch(Exception e) {
+			logger.log(Level.WARNING, "Could not close the result set", e);
+		}
+
+		try {
+			st.close();
+		} catch(Exception e) {
+			logger.log(Level.WARNING, "Could not close the statement", e);
+		}
+
+		if(closeListener != null) {
+			closeListener.accept(error);
+		}
+	}
+
+}
@@ -0,0 +1,252 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.AbstractList;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.naskar.fluentquery.jpa.dao.ResultTable;
+import com.naskar.fluentquery.jpa.dao.Row;
+
+public class ResultTableImpl implements ResultTable {
+
+	static final int INITIAL_CAPACITY = 64;
+
+	private String[] names;
+	private Map<String, Integer> indexes;
+	private TableColumn[] columns;
+	private int rows;
+	private int capacity;
+
+	public ResultTableImpl(ResultSetMetaData md) throws SQLException {
+		this(md, INITIAL_CAPACITY);
+	}
+
+	public ResultTableImpl(ResultSetMetaData md, int capacity) throws SQLException {
+		int count = md.getColumnCount();
+
+		this.names = new String[count];
+		this.indexes = new HashMap<String, Integer>(count * 2);
+		this.columns = new TableColumn[count];
+		this.capacity = Math.max(capacity, 1);
+
+		// names are lowercased once for the whole table, the last column wins on duplicates
+		for(int j = 1; j <= count; j++) {
+			names[j - 1] = md.getColumnName(j).toLowerCase().intern();
+			indexes.put(names[j - 1], j);
+			columns[j - 1] = TableColumn.of(md.getColumnType(j), this.capacity);
+		}
+	}
+
+	public void read(ResultSet rs) throws SQLException {
+		if(rows == capacity) {
+			capacity = capacity + (capacity >> 1) + 1;
+			for(TableColumn c : columns) {
+				c.grow(capacity);
+			}
+		}
+
+		for(int i = 0; i < columns.length; i++) {
+			columns[i].read(rs, i + 1, rows);
+		}
+
+		rows++;
+	}
+
+	@Override
+	public int getRowCount() {
+		return rows;
+	}
+
+	@Override
+	public int getColumnCount() {
+		return columns.length;
+	}
+
+	@Override
+	public String getColumnName(int column) {
+		return names[column - 1];
+	}
+
+	@Override
+	public int getColumnIndex(String name) {
+		Integer i = indexes.get(name);
+		return i != null ? i : -1;
+	}
+
+	@Override
+	public Object get(int row, int column) {
+		return column(row, column).get(row);
+	}
+
+	@Override
+	public Object get(int row, String column) {
+		int i = getColumnIndex(column);
+		return i > -1 ? get(row, i) : null;
+	}
+
+	@Override
+	public long getLong(int row, int column) {
+		return column(row, column).getLong(row);
+	}
+
+	@Override
+	public double getDouble(int row, int column) {
+		return column(row, column).getDouble(row);
+	}
+
+	@Override
+	public boolean isNull(int row, int column) {
+		return column(row, column).isNull(row);
+	}
+
+	private TableColumn column(int row, int column) {
+		if(row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", rows: " + rows);
+		}
+		return columns[column - 1];
+	}
+
+	@Override
+	public Row getRow(int row) {
+		if(row < 0 || row >= rows) {
+			throw new IndexOutOfBoundsException("Row: " + row + ", rows: " + rows);
+		}
+		return new TableRow(row);
+	}
+
+	@Override
+	public Iterator<Row> iterator() {
+		return new Iterator<Row>() {
+
+			private int row = 0;
+
+			@Override
+			public boolean hasNext() {
+				return row < rows;
+			}
+
+			@Override
+			public Row next() {
+				if(row >= rows) {
+					throw new NoSuchElementException();
+				}
+				return new TableRow(row++);
+			}
+		};
+	}
+
+	@Override
+	public List<Map<String, Object>> toList() {
+		return new AbstractList<Map<String, Object>>() {
+
+			@Override
+			public Map<String, Object> get(int index) {
+				return getRow(index);
+			}
+
+			@Override
+			public int size() {
+				return rows;
+			}
+		};
+	}
+
+	private class TableRow extends AbstractMap<String, Object> implements Row {
+
+		private final int row;
+
+		TableRow(int row) {
+			this.row = row;
+		}
+
+		@Override
+		public Object get(int index) {
+			return columns[index - 1].get(row);
+		}
+
+		@Override
+		public int getColumnCount() {
+			return columns.length;
+		}
+
+		@Override
+		public String getColumnName(int index) {
+			return names[index - 1];
+		}
+
+		@Override
+		public Row copy() {
+			return this;
+		}
+
+		@Override
+		public Object get(Object key) {
+			Integer i = indexes.get(key);
+			return i != null ? columns[i - 1].get(row) : null;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return indexes.containsKey(key);
+		}
+
+		@Override
+		public int size() {
+			return indexes.size();
+		}
+
+		@Override
+		public Set<Entry<String, Object>> entrySet() {
+			return new AbstractSet<Entry<String, Object>>() {
+
+				@Override
+				public Iterator<Entry<String, Object>> iterator() {
+					return new Iterator<Entry<String, Object>>() {
+
+						private int i = next(0);
+
+						private int next(int from) {
+							// skips the columns shadowed by a later one with the same name
+							while(from < names.length && indexes.get(names[from]) != from + 1) {
+								from++;
+							}
+							return from;
+						}
+
+						@Override
+						public boolean hasNext() {
+							return i < names.length;
+						}
+
+						@Override
+						public Entry<String, Object> next() {
+							if(i >= names.length) {
+								throw new NoSuchElementException();
+							}
+							Entry<String, Object> e = 
+									new SimpleImmutableEntry<String, Object>(names[i], columns[i].get(row));
+							i = next(i + 1);
+							return e;
+						}
+					};
+				}
+
+				@Override
+				public int size() {
+					return indexes.size();
+				}
+			};
+		}
+
+	}
+
+}
@@ -0,0 +1,102 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+import com.naskar.fluentquery.jpa.dao.Row;
+
+class RowImpl extends AbstractMap<String, Object> implements Row {
+
+	private final RowPlan plan;
+	private final Object[] values;
+
+	RowImpl(RowPlan plan) {
+		this(plan, new Object[plan.getColumnCount()]);
+	}
+
+	private RowImpl(RowPlan plan, Object[] values) {
+		this.plan = plan;
+		this.values = values;
+	}
+
+	void read(ResultSet rs) throws SQLException {
+		plan.read(rs, values);
+	}
+
+	@Override
+	public Object get(int index) {
+		return values[index - 1];
+	}
+
+	@Override
+	public int getColumnCount() {
+		return values.length;
+	}
+
+	@Override
+	public String getColumnName(int index) {
+		return plan.getColumnName(index - 1);
+	}
+
+	@Override
+	public Row copy() {
+		return new RowImpl(plan, values.clone());
+	}
+
+	@Override
+	public Object get(Object key) {
+		int i = plan.indexOf(key);
+		return i > -1 ? values[i] : null;
+	}
+
+	@Override
+	public boolean containsKey(Object key) {
+		return plan.indexOf(key) > -1;
+	}
+
+	@Override
+	public int size() {
+		return plan.getKeys().length;
+	}
+
+	@Override
+	public Set<Entry<String, Object>> entrySet() {
+		return new AbstractSet<Entry<String, Object>>() {
+
+			@Override
+			public Iterator<Entry<String, Object>> iterator() {
+				int[] keys = plan.getKeys();
+
+				return new Iterator<Entry<String, Object>>() {
+
+					private int k = 0;
+
+					@Override
+					public boolean hasNext() {
+						return k < keys.length;
+					}
+
+					@Override
+					public Entry<String, Object> next() {
+						if(k >= keys.length) {
+							throw new NoSuchElementException();
+						}
+						int i = keys[k++];
+						return new SimpleImmutableEntry<String, Object>(plan.getColumnName(i), values[i]);
+					}
+				};
+			}
+
+			@Override
+			public int size() {
+				return plan.getKeys().length;
+			}
+		};
+	}
+
+}
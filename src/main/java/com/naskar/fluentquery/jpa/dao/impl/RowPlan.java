@@ -0,0 +1,94 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.HashMap;
+import java.util.Map;
+
+class RowPlan {
+
+	interface ColumnReader {
+
+		Object read(ResultSet rs, int index) throws SQLException;
+
+	}
+
+	private static final ColumnReader OBJECT_READER = (rs, j) -> rs.getObject(j);
+	private static final ColumnReader BINARY_READER = (rs, j) -> rs.getBinaryStream(j);
+
+	private final String[] names;
+	private final ColumnReader[] readers;
+	private final Map<String, Integer> indexes;
+	private final int[] keys;
+
+	private RowPlan(String[] names, ColumnReader[] readers) {
+		this.names = names;
+		this.readers = readers;
+		this.indexes = new HashMap<String, Integer>(names.length * 2);
+
+		// the last column wins on duplicated names, as in the former HashMap rows
+		for(int i = 0; i < names.length; i++) {
+			indexes.put(names[i], i);
+		}
+
+		this.keys = new int[indexes.size()];
+		int k = 0;
+		for(int i = 0; i < names.length; i++) {
+			if(indexes.get(names[i]) == i) {
+				keys[k++] = i;
+			}
+		}
+	}
+
+	static RowPlan of(ResultSetMetaData md) throws SQLException {
+		int count = md.getColumnCount();
+
+		String[] names = new String[count];
+		ColumnReader[] readers = new ColumnReader[count];
+
+		for(int j = 1; j <= count; j++) {
+			names[j - 1] = md.getColumnName(j).intern();
+			readers[j - 1] = readerOf(md.getColumnType(j));
+		}
+
+		return new RowPlan(names, readers);
+	}
+
+	private static ColumnReader readerOf(int type) {
+		switch(type) {
+			case Types.BINARY:
+			case Types.LONGVARBINARY:
+			case Types.VARBINARY:
+				return BINARY_READER;
+
+			default:
+				return OBJECT_READER;
+		}
+	}
+
+	int getColumnCount() {
+		return names.length;
+	}
+
+	String getColumnName(int i) {
+		return names[i];
+	}
+
+	int[] getKeys() {
+		return keys;
+	}
+
+	int indexOf(Object name) {
+		Integer i = indexes.get(name);
+		return i != null ? i : -1;
+	}
+
+	void read(ResultSet rs, Object[] values) throws SQLException {
+		for(int i = 0; i < readers.length; i++) {
+			values[i] = readers[i].read(rs, i + 1);
+		}
+	}
+
+}
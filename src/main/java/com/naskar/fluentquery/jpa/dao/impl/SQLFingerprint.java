@@ -0,0 +1,79 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.regex.Pattern;
+
+final class SQLFingerprint {
+
+	private static final int CACHE_SIZE = 1024;
+
+	private static final Pattern PARAM_LIST = Pattern.compile("\\(\\s*\\?(\\s*,\\s*\\?)+\\s*\\)");
+
+	// read on every statement, a hit takes no lock
+	private static final ConcurrentCache<String, String> cache = new ConcurrentCache<String, String>(CACHE_SIZE);
+
+	private SQLFingerprint() {
+	}
+
+	static String of(String sql) {
+		if(sql == null) {
+			return null;
+		}
+		return cache.get(sql, SQLFingerprint::normalize);
+	}
+
+	// literals become ?, whitespace and case are folded and in lists of any size look the same
+	static String normalize(String sql) {
+		StringBuilder sb = new StringBuilder(sql.length());
+
+		int i = 0;
+		int length = sql.length();
+		while(i < length) {
+			char c = sql.charAt(i);
+
+			if(c == '\'') {
+				i++;
+				while(i < length) {
+					if(sql.charAt(i) == '\'') {
+						if(i + 1 < length && sql.charAt(i + 1) == '\'') {
+							i += 2;
+							continue;
+						}
+						break;
+					}
+					i++;
+				}
+				sb.append('?');
+				i++;
+
+			} else if(Character.isDigit(c) && !isIdentifierEnd(sb)) {
+				while(i < length && (Character.isDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+					i++;
+				}
+				sb.append('?');
+
+			} else if(Character.isWhitespace(c)) {
+				while(i < length && Character.isWhitespace(sql.charAt(i))) {
+					i++;
+				}
+				if(sb.length() > 0) {
+					sb.append(' ');
+				}
+
+			} else {
+				sb.append(Character.toLowerCase(c));
+				i++;
+			}
+		}
+
+		return PARAM_LIST.matcher(sb.toString().trim()).replaceAll("(?)");
+	}
+
+	private static boolean isIdentifierEnd(StringBuilder sb) {
+		if(sb.length() == 0) {
+			return false;
+		}
+		char last = sb.charAt(sb.length() - 1);
+		return Character.isLetterOrDigit(last) || last == '_' || last == '.';
+	}
+
+}
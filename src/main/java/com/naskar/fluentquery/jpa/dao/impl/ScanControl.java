@@ -0,0 +1,58 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.sql.Statement;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
+
+class ScanControl {
+
+	private final AtomicReference<Throwable> error;
+	private final Set<Statement> running;
+	private volatile boolean cancelled;
+
+	ScanControl() {
+		this.error = new AtomicReference<Throwable>();
+		this.running = ConcurrentHashMap.newKeySet();
+	}
+
+	boolean isCancelled() {
+		return cancelled;
+	}
+
+	void started(Statement st) {
+		running.add(st);
+		if(cancelled) {
+			cancel(st);
+		}
+	}
+
+	void finished(Statement st) {
+		running.remove(st);
+	}
+
+	void fail(Throwable e) {
+		if(error.compareAndSet(null, e)) {
+			cancel();
+		}
+	}
+
+	// the statements still running are cancelled on the database too
+	void cancel() {
+		cancelled = true;
+		running.forEach(ScanControl::cancel);
+	}
+
+	Throwable getError() {
+		return error.get();
+	}
+
+	private static void cancel(Statement st) {
+		try {
+			st.cancel();
+		} catch(Exception e) {
+			// already closed or not supported by the driver
+		}
+	}
+
+}
@@ -0,0 +1,70 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.naskar.fluentquery.jpa.dao.DAOListener;
+import com.naskar.fluentquery.jpa.dao.StatementEvent;
+
+public class SlowQueryLog implements DAOListener {
+
+	private static final Logger logger = Logger.getLogger(SlowQueryLog.class.getName());
+
+	private static final int DEFAULT_MAX_ENTRIES = 100;
+
+	private long thresholdNanos;
+	private int maxEntries;
+	private ConcurrentLinkedDeque<StatementEvent> entries;
+	private AtomicInteger size;
+
+	public SlowQueryLog(long thresholdMillis) {
+		this(thresholdMillis, DEFAULT_MAX_ENTRIES);
+	}
+
+	public SlowQueryLog(long thresholdMillis, int maxEntries) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+		this.maxEntries = maxEntries;
+		this.entries = new ConcurrentLinkedDeque<StatementEvent>();
+		this.size = new AtomicInteger();
+	}
+
+	public void setThresholdMillis(long thresholdMillis) {
+		this.thresholdNanos = TimeUnit.MILLISECONDS.toNanos(thresholdMillis);
+	}
+
+	public long getThresholdMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(thresholdNanos);
+	}
+
+	@Override
+	public void onStatement(StatementEvent event) {
+		if(event.getTotalNanos() < thresholdNanos) {
+			return;
+		}
+
+		if(logger.isLoggable(Level.WARNING)) {
+			logger.log(Level.WARNING, "Slow statement: " + event);
+		}
+
+		entries.addFirst(event);
+		if(size.incrementAndGet() > maxEntries && entries.pollLast() != null) {
+			size.decrementAndGet();
+		}
+	}
+
+	// most recent first
+	public List<StatementEvent> getEntries() {
+		return new ArrayList<StatementEvent>(entries);
+	}
+
+	public void clear() {
+		entries.clear();
+		size.set(0);
+	}
+
+}
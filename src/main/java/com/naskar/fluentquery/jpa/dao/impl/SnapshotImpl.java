@@ -0,0 +1,44 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import com.naskar.fluentquery.jpa.dao.Snapshot;
+
+public class SnapshotImpl<T> implements Snapshot<T> {
+
+	private final Class<T> clazz;
+	private final EntityMapping mapping;
+	private final Map<String, Object> values;
+
+	SnapshotImpl(Class<T> clazz, EntityMapping mapping, Map<String, Object> values) {
+		this.clazz = clazz;
+		this.mapping = mapping;
+		this.values = values;
+	}
+
+	@Override
+	public Class<T> getClazz() {
+		return clazz;
+	}
+
+	@Override
+	public Object get(String attribute) {
+		return values.get(attribute);
+	}
+
+	@Override
+	public Set<String> changed(T current) {
+		return new LinkedHashSet<String>(mapping.changed(current, values));
+	}
+
+	EntityMapping getMapping() {
+		return mapping;
+	}
+
+	Map<String, Object> getValues() {
+		return values;
+	}
+
+}
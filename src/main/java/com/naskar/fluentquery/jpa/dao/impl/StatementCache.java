@@ -0,0 +1,134 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+class StatementCache {
+
+	private static final Logger logger = Logger.getLogger(StatementCache.class.getName());
+
+	private final Connection connection;
+	private final int size;
+	private final LRUCache<StatementKey, PreparedStatement> statements;
+
+	private final Map<PreparedStatement, StatementKey> cached;
+	private final Map<PreparedStatement, Boolean> inUse;
+
+	StatementCache(Connection connection, int size) {
+		this.connection = connection;
+		this.size = size;
+		this.cached = new IdentityHashMap<PreparedStatement, StatementKey>();
+		this.inUse = new IdentityHashMap<PreparedStatement, Boolean>();
+
+		this.statements = new LRUCache<StatementKey, PreparedStatement>(size);
+		this.statements.setRemovalListener((k, st) -> {
+			cached.remove(st);
+			// statements still executing are closed when released
+			if(!inUse.containsKey(st)) {
+				close(st);
+			}
+		});
+	}
+
+	Connection getConnection() {
+		return connection;
+	}
+
+	int getSize() {
+		return size;
+	}
+
+	LRUCache<StatementKey, PreparedStatement> getStatements() {
+		return statements;
+	}
+
+	PreparedStatement acquire(String sql, boolean generatedKeys) throws SQLException {
+		StatementKey key = new StatementKey(sql, generatedKeys);
+
+		PreparedStatement st = statements.get(key);
+		if(st != null && !inUse.containsKey(st)) {
+			st.clearParameters();
+
+		} else if(st != null) {
+			// a nested call with the same sql gets its own statement
+			st = prepare(sql, generatedKeys);
+
+		} else {
+			st = prepare(sql, generatedKeys);
+			statements.put(key, st);
+			cached.put(st, key);
+		}
+
+		inUse.put(st, Boolean.TRUE);
+
+		return st;
+	}
+
+	void release(PreparedStatement st, boolean failed) {
+		inUse.remove(st);
+
+		StatementKey key = cached.get(st);
+		if(key == null) {
+			close(st);
+
+		} else if(failed) {
+			statements.remove(key);
+		}
+	}
+
+	void close() {
+		statements.clear();
+	}
+
+	private PreparedStatement prepare(String sql, boolean generatedKeys) throws SQLException {
+		if(generatedKeys) {
+			return connection.prepareStatement(sql, Statement.RETURN_GENERATED_KEYS);
+		} else {
+			return connection.prepareStatement(sql);
+		}
+	}
+
+	private void close(PreparedStatement st) {
+		try {
+			st.close();
+		} catch(Exception e) {
+			logger.log(Level.WARNING, "Could not close the statement", e);
+		}
+	}
+
+	static class StatementKey {
+
+		private final String sql;
+		private final boolean generatedKeys;
+
+		StatementKey(String sql, boolean generatedKeys) {
+			this.sql = sql;
+			this.generatedKeys = generatedKeys;
+		}
+
+		@Override
+		public int hashCode() {
+			return generatedKeys ? ~sql.hashCode() : sql.hashCode();
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			if(this == obj) {
+				return true;
+			}
+			if(!(obj instanceof StatementKey)) {
+				return false;
+			}
+			StatementKey other = (StatementKey)obj;
+			return generatedKeys == other.generatedKeys && sql.equals(other.sql);
+		}
+
+	}
+
+}
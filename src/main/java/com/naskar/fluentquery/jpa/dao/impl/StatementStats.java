@@ -0,0 +1,74 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import com.naskar.fluentquery.jpa.dao.StatementEvent;
+
+public class StatementStats {
+
+	private String fingerprint;
+	private LatencyHistogram total;
+	private LatencyHistogram firstRow;
+	private LatencyHistogram mapping;
+	private LongAdder rows;
+	private LongAdder errors;
+
+	public StatementStats(String fingerprint) {
+		this.fingerprint = fingerprint;
+		this.total = new LatencyHistogram();
+		this.firstRow = new LatencyHistogram();
+		this.mapping = new LatencyHistogram();
+		this.rows = new LongAdder();
+		this.errors = new LongAdder();
+	}
+
+	void record(StatementEvent event) {
+		total.record(event.getTotalNanos());
+		firstRow.record(event.getFirstRowNanos());
+		mapping.record(event.getMappingNanos());
+		rows.add(event.getRows());
+		if(event.isFailed()) {
+			errors.increment();
+		}
+	}
+
+	public String getFingerprint() {
+		return fingerprint;
+	}
+
+	public long getCount() {
+		return total.getCount();
+	}
+
+	public LatencyHistogram getTotal() {
+		return total;
+	}
+
+	public LatencyHistogram getFirstRow() {
+		return firstRow;
+	}
+
+	public LatencyHistogram getMapping() {
+		return mapping;
+	}
+
+	public long getRows() {
+		return rows.sum();
+	}
+
+	public long getErrors() {
+		return errors.sum();
+	}
+
+	@Override
+	public String toString() {
+		return "count=" + getCount() + 
+				" p50=" + (total.getPercentile(50) / 1000) + "us" + 
+				" p99=" + (total.getPercentile(99) / 1000) + "us" + 
+				" max=" + (total.getMax() / 1000) + "us" + 
+				" rows=" + getRows() + 
+				" errors=" + getErrors() + 
+				" sql=" + fingerprint;
+	}
+
+}
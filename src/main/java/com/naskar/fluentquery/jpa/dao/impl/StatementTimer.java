@@ -0,0 +1,50 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import com.naskar.fluentquery.jpa.dao.StatementEvent;
+
+class StatementTimer {
+
+	private StatementEvent.Type type;
+	private String sql;
+	private int bindCount;
+	private long rows;
+	private long start;
+	private long firstRow;
+	private long mapping;
+
+	StatementTimer(StatementEvent.Type type, String sql, int bindCount) {
+		this.type = type;
+		this.sql = sql;
+		this.bindCount = bindCount;
+		this.firstRow = -1L;
+		this.start = System.nanoTime();
+	}
+
+	void addBinds(int count) {
+		bindCount += count;
+	}
+
+	void addRows(long count) {
+		rows += count;
+	}
+
+	void firstRow() {
+		if(firstRow < 0) {
+			firstRow = System.nanoTime() - start;
+		}
+	}
+
+	long mappingStart() {
+		return System.nanoTime();
+	}
+
+	void mappingEnd(long mappingStart) {
+		mapping += System.nanoTime() - mappingStart;
+	}
+
+	StatementEvent finish(Throwable error) {
+		return new StatementEvent(type, sql, SQLFingerprint.of(sql), bindCount, rows,
+				firstRow, System.nanoTime() - start, mapping, error);
+	}
+
+}
@@ -11,6 +11,7 @@ import java.util.function.Predicate;
 import java.util.function.UnaryOperator;
 import java.util.stream.Stream;
 
+import com.naskar.fluentquery.jpa.dao.CountType;
 import com.naskar.fluentquery.jpa.dao.SubList;
 
 public class SubListImpl<T> implements List<T>, SubList<T> {
@@ -19,12 +20,19 @@ public class SubListImpl<T> implements List<T>, SubList<T> {
 	private Long first;
 	private Long max;
 	private Long count;
+	private CountType countType;
 	
 	public SubListImpl(List<T> delegate, Long first, Long max, Long count) {
+		this(delegate, first, max, count, 
+			count != null && count > -1L ? CountType.EXACT : CountType.UNKNOWN);
+	}
+	
+	public SubListImpl(List<T> delegate, Long first, Long max, Long count, CountType countType) {
 		this.delegate = delegate;
 		this.first = first;
 		this.max = max;
 		this.count = count;
+		this.countType = countType;
 	}
 
 	public List<T> getDelegate() {
@@ -42,6 +50,10 @@ public class SubListImpl<T> implements List<T>, SubList<T> {
 	public Long getCount() {
 		return count;
 	}
+	
+	public CountType getCountType() {
+		return countType;
+	}
 
 	// ----- delegate methods -----------
 	public void forEach(Consumer<? super T> action) {
@@ -0,0 +1,194 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.BitSet;
+
+abstract class TableColumn {
+
+	protected final int sqlType;
+
+	TableColumn(int sqlType) {
+		this.sqlType = sqlType;
+	}
+
+	static TableColumn of(int sqlType, int capacity) {
+		switch(sqlType) {
+			case Types.BIGINT:
+			case Types.INTEGER:
+			case Types.SMALLINT:
+			case Types.TINYINT:
+				return new LongColumn(sqlType, capacity);
+
+			case Types.DOUBLE:
+			case Types.FLOAT:
+			case Types.REAL:
+				return new DoubleColumn(sqlType, capacity);
+
+			default:
+				return new ObjectColumn(sqlType, capacity);
+		}
+	}
+
+	abstract void read(ResultSet rs, int index, int row) throws SQLException;
+
+	abstract void grow(int capacity);
+
+	abstract Object get(int row);
+
+	abstract boolean isNull(int row);
+
+	long getLong(int row) {
+		Object v = get(row);
+		return v != null ? ((Number)v).longValue() : 0L;
+	}
+
+	double getDouble(int row) {
+		Object v = get(row);
+		return v != null ? ((Number)v).doubleValue() : 0.0;
+	}
+
+	static class LongColumn extends TableColumn {
+
+		private long[] values;
+		private BitSet nulls;
+
+		LongColumn(int sqlType, int capacity) {
+			super(sqlType);
+			this.values = new long[capacity];
+			this.nulls = new BitSet();
+		}
+
+		@Override
+		void read(ResultSet rs, int index, int row) throws SQLException {
+			values[row] = rs.getLong(index);
+			if(rs.wasNull()) {
+				nulls.set(row);
+			}
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		Object get(int row) {
+			if(nulls.get(row)) {
+				return null;
+			}
+			// boxed as getObject would, BIGINT as Long and the narrower types as Integer
+			return sqlType == Types.BIGINT ? Long.valueOf(values[row]) : Integer.valueOf((int)values[row]);
+		}
+
+		@Override
+		boolean isNull(int row) {
+			return nulls.get(row);
+		}
+
+		@Override
+		long getLong(int row) {
+			return values[row];
+		}
+
+		@Override
+		double getDouble(int row) {
+			return values[row];
+		}
+
+	}
+
+	static class DoubleColumn extends TableColumn {
+
+		private double[] values;
+		private BitSet nulls;
+
+		DoubleColumn(int sqlType, int capacity) {
+			super(sqlType);
+			this.values = new double[capacity];
+			this.nulls = new BitSet();
+		}
+
+		@Override
+		void read(ResultSet rs, int index, int row) throws SQLException {
+			values[row] = rs.getDouble(index);
+			if(rs.wasNull()) {
+				nulls.set(row);
+			}
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		Object get(int row) {
+			if(nulls.get(row)) {
+				return null;
+			}
+			return sqlType == Types.REAL ? Float.valueOf((float)values[row]) : Double.valueOf(values[row]);
+		}
+
+		@Override
+		boolean isNull(int row) {
+			return nulls.get(row);
+		}
+
+		@Override
+		long getLong(int row) {
+			return (long)values[row];
+		}
+
+		@Override
+		double getDouble(int row) {
+			return values[row];
+		}
+
+	}
+
+	static class ObjectColumn extends TableColumn {
+
+		private Object[] values;
+
+		ObjectColumn(int sqlType, int capacity) {
+			super(sqlType);
+			this.values = new Object[capacity];
+		}
+
+		@Override
+		void read(ResultSet rs, int index, int row) throws SQLException {
+			switch(sqlType) {
+				// streams do not outlive the result set
+				case Types.BINARY:
+				case Types.VARBINARY:
+				case Types.LONGVARBINARY:
+				case Types.BLOB:
+					values[row] = rs.getBytes(index);
+					break;
+
+				default:
+					values[row] = rs.getObject(index);
+			}
+		}
+
+		@Override
+		void grow(int capacity) {
+			values = Arrays.copyOf(values, capacity);
+		}
+
+		@Override
+		Object get(int row) {
+			return values[row];
+		}
+
+		@Override
+		boolean isNull(int row) {
+			return values[row] == null;
+		}
+
+	}
+
+}
@@ -0,0 +1,64 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.util.Collections;
+import java.util.List;
+
+final class TemplateKey {
+
+	enum Kind {
+		INSERT,
+		DELETE,
+		UPSERT,
+		// rendered from the insert statement of an entity, held in table
+		ENTITY_UPSERT
+	}
+
+	private final Kind kind;
+	private final String table;
+	private final List<String> columns;
+	private final int size;
+	private final int hash;
+
+	private TemplateKey(Kind kind, String table, List<String> columns, int size) {
+		this.kind = kind;
+		this.table = table;
+		this.columns = columns;
+		this.size = size;
+		this.hash = ((kind.hashCode() * 31 + table.hashCode()) * 31 + columns.hashCode()) * 31 + size;
+	}
+
+	static TemplateKey insert(String table, List<String> columns, int rows) {
+		return new TemplateKey(Kind.INSERT, table, columns, rows);
+	}
+
+	static TemplateKey delete(String table, String column, int ids) {
+		return new TemplateKey(Kind.DELETE, table, Collections.singletonList(column), ids);
+	}
+
+	static TemplateKey upsert(String table, List<String> columns) {
+		return new TemplateKey(Kind.UPSERT, table, columns, 1);
+	}
+
+	static TemplateKey upsert(String insertSql) {
+		return new TemplateKey(Kind.ENTITY_UPSERT, insertSql, Collections.<String>emptyList(), 1);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) {
+			return true;
+		}
+		if(!(obj instanceof TemplateKey)) {
+			return false;
+		}
+		TemplateKey other = (TemplateKey)obj;
+		return kind == other.kind && size == other.size 
+				&& table.equals(other.table) && columns.equals(other.columns);
+	}
+
+}
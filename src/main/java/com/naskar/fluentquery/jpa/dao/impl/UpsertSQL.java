@@ -0,0 +1,219 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import com.naskar.fluentquery.jpa.dao.ColumnMetadata;
+import com.naskar.fluentquery.jpa.dao.TableMetadata;
+import com.naskar.fluentquery.jpa.dao.UpsertDialect;
+
+final class UpsertSQL {
+	
+	private static final Pattern INSERT = Pattern.compile(
+			"^\\s*insert\\s+into\\s+(\\S+)\\s*\\((.*?)\\)\\s*values\\s*\\((.*)\\)\\s*$",
+			Pattern.CASE_INSENSITIVE | Pattern.DOTALL);
+	
+	private final String table;
+	private final List<String> columns;
+	private final List<String> values;
+	
+	UpsertSQL(String table, List<String> columns, List<String> values) {
+		this.table = table;
+		this.columns = columns;
+		this.values = values;
+	}
+	
+	// table, columns and value expressions of a rendered single row insert
+	static UpsertSQL parse(String sql) {
+		Matcher m = INSERT.matcher(sql);
+		if(!m.matches()) {
+			throw new IllegalArgumentException("Not a single row insert: " + sql);
+		}
+		
+		List<String> columns = split(m.group(2));
+		List<String> values = split(m.group(3));
+		if(columns.size() != values.size()) {
+			throw new IllegalArgumentException("Columns and values do not match: " + sql);
+		}
+		
+		return new UpsertSQL(m.group(1), columns, values);
+	}
+	
+	String getTable() {
+		return table;
+	}
+	
+	// bare parameters in a values table carry no type, they are cast to the column type
+	UpsertSQL typed(TableMetadata metadata) {
+		List<String> typed = new ArrayList<String>(values.size());
+		for(int i = 0; i < values.size(); i++) {
+			ColumnMetadata column = metadata.getColumn(columns.get(i));
+			if("?".equals(values.get(i)) && column != null && column.getTypeName() != null) {
+				typed.add("cast(? as " + typeOf(column) + ")");
+			} else {
+				typed.add(values.get(i));
+			}
+		}
+		return new UpsertSQL(table, columns, typed);
+	}
+	
+	String render(UpsertDialect dialect, List<String> keys) {
+		if(keys.isEmpty()) {
+			throw new IllegalStateException("No key columns for table: " + table);
+		}
+		
+		List<String> updated = new ArrayList<String>();
+		for(String column : columns) {
+			if(!containsIgnoreCase(keys, column)) {
+				updated.add(column);
+			}
+		}
+		
+		for(String key : keys) {
+			if(!containsIgnoreCase(columns, key)) {
+				throw new IllegalArgumentException("Key column " + key + " has no value for table: " + table);
+			}
+		}
+		
+		StringBuilder sb = new StringBuilder();
+		
+		switch(dialect) {
+			case POSTGRESQL:
+				insert(sb, table, columns, values);
+				sb.append(" on conflict (").append(String.join(", ", keys)).append(")");
+				if(updated.isEmpty()) {
+					sb.append(" do nothing");
+				} else {
+					sb.append(" do update set ");
+					sb.append(updated.stream()
+						.map(c -> c + " = excluded." + c)
+						.collect(Collectors.joining(", ")));
+				}
+				break;
+				
+			case MYSQL:
+				insert(sb, table, columns, values);
+				sb.append(" on duplicate key update ");
+				if(updated.isEmpty()) {
+					// a no-op assignment keeps existing rows untouched
+					sb.append(keys.get(0)).append(" = ").append(keys.get(0));
+				} else {
+					sb.append(updated.stream()
+						.map(c -> c + " = values(" + c + ")")
+						.collect(Collectors.joining(", ")));
+				}
+				break;
+				
+			case ORACLE:
+				sb.append("merge into ").append(table).append(" t using (select ");
+				for(int i = 0; i < columns.size(); i++) {
+					if(i > 0) {
+						sb.append(", ");
+					}
+					sb.append(values.get(i)).append(" ").append(columns.get(i));
+				}
+				sb.append(" from dual) s");
+				merge(sb, columns, keys, updated);
+				break;
+				
+			default:
+				sb.append("merge into ").append(table).append(" t using (values (");
+				sb.append(String.join(", ", values));
+				sb.append(")) s (").append(String.join(", ", columns)).append(")");
+				merge(sb, columns, keys, updated);
+				if(dialect == UpsertDialect.SQLSERVER) {
+					sb.append(";");
+				}
+				break;
+		}
+		
+		return sb.toString();
+	}
+	
+	private static void insert(StringBuilder sb, String table, List<String> columns, List<String> values) {
+		sb.append("insert into ").append(table);
+		sb.append(" (").append(String.join(", ", columns)).append(")");
+		sb.append(" values (").append(String.join(", ", values)).append(")");
+	}
+	
+	private static void merge(StringBuilder sb, List<String> columns, List<String> keys, List<String> updated) {
+		sb.append(" on (");
+		sb.append(keys.stream()
+			.map(k -> "t." + k + " = s." + k)
+			.collect(Collectors.joining(" and ")));
+		sb.append(")");
+		
+		if(!updated.isEmpty()) {
+			sb.append(" when matched then update set ");
+			sb.append(updated.stream()
+				.map(c -> c + " = s." + c)
+				.collect(Collectors.joining(", ")));
+		}
+		
+		sb.append(" when not matched then insert (").append(String.join(", ", columns)).append(")");
+		sb.append(" values (");
+		sb.append(columns.stream()
+			.map(c -> "s." + c)
+			.collect(Collectors.joining(", ")));
+		sb.append(")");
+	}
+	
+	private static String typeOf(ColumnMetadata column) {
+		if(column.getSize() <= 0) {
+			return column.getTypeName();
+		}
+		
+		switch(column.getType()) {
+			case Types.CHAR:
+			case Types.VARCHAR:
+			case Types.NCHAR:
+			case Types.NVARCHAR:
+			case Types.BINARY:
+			case Types.VARBINARY:
+				return column.getTypeName() + "(" + column.getSize() + ")";
+				
+			case Types.DECIMAL:
+			case Types.NUMERIC:
+				return column.getTypeName() + "(" + column.getSize() + ", " + column.getScale() + ")";
+				
+			default:
+				return column.getTypeName();
+		}
+	}
+	
+	// commas inside function calls do not separate values
+	private static List<String> split(String list) {
+		List<String> items = new ArrayList<String>();
+		
+		int depth = 0;
+		int start = 0;
+		for(int i = 0; i < list.length(); i++) {
+			char c = list.charAt(i);
+			if(c == '(') {
+				depth++;
+			} else if(c == ')') {
+				depth--;
+			} else if(c == ',' && depth == 0) {
+				items.add(list.substring(start, i).trim());
+				start = i + 1;
+			}
+		}
+		items.add(list.substring(start).trim());
+		
+		return items;
+	}
+	
+	private static boolean containsIgnoreCase(List<String> names, String name) {
+		for(String n : names) {
+			if(n.equalsIgnoreCase(name)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
@@ -0,0 +1,119 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.naskar.fluentquery.jpa.dao.CountStrategy;
+
+public class ResultCacheTest {
+
+	private static final String SQL = "select e0.id, e0.name from e_customer e0 where e0.id = ?";
+
+	@Test
+	public void testHit() {
+		ResultCache cache = new ResultCache(16, 0L);
+		AtomicInteger loads = new AtomicInteger();
+
+		assertEquals("a", cache.get(key(1L), SQL, () -> load(loads, "a")));
+		assertEquals("a", cache.get(key(1L), SQL, () -> load(loads, "b")));
+
+		assertEquals(1, loads.get());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+	}
+
+	@Test
+	public void testWriteInvalidatesReadTables() {
+		ResultCache cache = new ResultCache(16, 0L);
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.get(key(1L), SQL, () -> load(loads, "a"));
+		cache.written("update E_CUSTOMER set name = ? where id = ?");
+
+		assertEquals("b", cache.get(key(1L), SQL, () -> load(loads, "b")));
+		assertEquals(2, loads.get());
+	}
+
+	@Test
+	public void testWriteToOtherTableKeepsEntry() {
+		ResultCache cache = new ResultCache(16, 0L);
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.get(key(1L), SQL, () -> load(loads, "a"));
+		cache.written("insert into e_order (id) values (?)");
+
+		assertEquals("a", cache.get(key(1L), SQL, () -> load(loads, "b")));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testUnknownWriteInvalidatesAll() {
+		ResultCache cache = new ResultCache(16, 0L);
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.get(key(1L), SQL, () -> load(loads, "a"));
+		cache.written("call refresh_all()");
+
+		assertEquals("b", cache.get(key(1L), SQL, () -> load(loads, "b")));
+	}
+
+	@Test
+	public void testPendingUntilCompleted() {
+		ResultCache cache = new ResultCache(16, 0L);
+		cache.setTransactional(true);
+
+		assertFalse(cache.isPending(SQL));
+
+		cache.written("delete from e_customer where id = ?");
+		assertTrue(cache.isPending(SQL));
+		assertFalse(cache.isPending("select id from e_order"));
+
+		cache.completed();
+		assertFalse(cache.isPending(SQL));
+	}
+
+	@Test
+	public void testCompletedInvalidatesAgain() {
+		ResultCache cache = new ResultCache(16, 0L);
+		cache.setTransactional(true);
+		AtomicInteger loads = new AtomicInteger();
+
+		cache.written("update e_customer set name = ?");
+
+		// another transaction caches the row before the writer commits
+		cache.get(key(1L), SQL, () -> load(loads, "old"));
+		cache.completed();
+
+		assertEquals("new", cache.get(key(1L), SQL, () -> load(loads, "new")));
+	}
+
+	@Test
+	public void testCountStrategyKeys() {
+		ResultCache cache = new ResultCache(16, 0L);
+		AtomicInteger loads = new AtomicInteger();
+
+		List<Object> k1 = Arrays.asList("list", SQL, CountStrategy.capped(100L));
+		List<Object> k2 = Arrays.asList("list", SQL, CountStrategy.capped(100L));
+
+		cache.get(k1, SQL, () -> load(loads, "a"));
+		assertEquals("a", cache.get(k2, SQL, () -> load(loads, "b")));
+		assertEquals(1, loads.get());
+	}
+
+	private List<Object> key(Long id) {
+		return Arrays.asList("single", SQL, Arrays.asList(id));
+	}
+
+	private String load(AtomicInteger loads, String value) {
+		loads.incrementAndGet();
+		return value;
+	}
+
+}
@@ -0,0 +1,40 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+@Entity
+public class UpsertCustomer {
+	
+	@Id
+	private Long id;
+	
+	private String name;
+	
+	private Integer age;
+	
+	public Long getId() {
+		return id;
+	}
+
+	public void setId(Long id) {
+		this.id = id;
+	}
+
+	public String getName() {
+		return name;
+	}
+
+	public void setName(String name) {
+		this.name = name;
+	}
+
+	public Integer getAge() {
+		return age;
+	}
+
+	public void setAge(Integer age) {
+		this.age = age;
+	}
+
+}
@@ -0,0 +1,150 @@
+package com.naskar.fluentquery.jpa.dao.impl;
+
+import static org.junit.Assert.assertEquals;
+
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.persistence.EntityManager;
+import javax.persistence.EntityManagerFactory;
+import javax.persistence.Persistence;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.naskar.fluentquery.Into;
+import com.naskar.fluentquery.jpa.dao.ColumnMetadata;
+import com.naskar.fluentquery.jpa.dao.TableMetadata;
+import com.naskar.fluentquery.jpa.dao.UpsertDialect;
+
+public class UpsertTest {
+	
+	private static EntityManagerFactory factory;
+	
+	private EntityManager em;
+	private DAOImpl dao;
+	
+	@BeforeClass
+	public static void setUpClass() {
+		factory = Persistence.createEntityManagerFactory("test");
+	}
+	
+	@AfterClass
+	public static void tearDownClass() {
+		factory.close();
+	}
+	
+	@Before
+	public void setUp() {
+		em = factory.createEntityManager();
+		em.getTransaction().begin();
+		
+		dao = new DAOImpl();
+		dao.setEm(em);
+	}
+	
+	@After
+	public void tearDown() {
+		em.getTransaction().rollback();
+		em.close();
+	}
+	
+	@Test
+	public void testRenderCastsMergeParameters() {
+		TableMetadata table = new TableMetadata("e_customer", Arrays.asList(
+				new ColumnMetadata("id", Types.BIGINT, "BIGINT", false, 64, 0),
+				new ColumnMetadata("name", Types.VARCHAR, "VARCHAR", true, 255, 0)),
+			Arrays.asList("id"));
+		
+		String sql = new UpsertSQL("e_customer", Arrays.asList("id", "name"), Arrays.asList("?", "?"))
+			.typed(table)
+			.render(UpsertDialect.MERGE, Arrays.asList("id"));
+		
+		assertEquals("merge into e_customer t using (values (cast(? as BIGINT), cast(? as VARCHAR(255)))) s (id, name)"
+			+ " on (t.id = s.id) when matched then update set name = s.name"
+			+ " when not matched then insert (id, name) values (s.id, s.name)", sql);
+	}
+	
+	@Test
+	public void testUpsertInsertsThenUpdates() {
+		assertEquals(1, dao.upsert(customer(1L, "first", 20)));
+		assertEquals(1, dao.upsert(customer(1L, "second", 21)));
+		
+		assertEquals(1L, count());
+		assertEquals("second", find(1L).getName());
+		assertEquals(Integer.valueOf(21), find(1L).getAge());
+	}
+	
+	@Test
+	public void testUpsertAllInsertsThenUpdates() {
+		assertEquals(3, dao.upsertAll(Arrays.asList(
+			customer(1L, "a", 1), customer(2L, "b", 2), customer(3L, "c", 3))));
+		
+		assertEquals(3, dao.upsertAll(Arrays.asList(
+			customer(2L, "b2", 2), customer(3L, "c2", 3), customer(4L, "d", 4))));
+		
+		assertEquals(4L, count());
+		assertEquals("a", find(1L).getName());
+		assertEquals("b2", find(2L).getName());
+		assertEquals("d", find(4L).getName());
+	}
+	
+	@Test
+	public void testUpsertAllRowsInsertsThenUpdates() {
+		List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+		rows.add(row(1L, "a", 1));
+		rows.add(row(2L, "b", 2));
+		assertEquals(2, dao.upsertAll("UpsertCustomer", rows));
+		
+		// the same columns in another order
+		Map<String, Object> reordered = new LinkedHashMap<String, Object>();
+		reordered.put("name", "b2");
+		reordered.put("age", 22);
+		reordered.put("id", 2L);
+		assertEquals(2, dao.upsertAll("UpsertCustomer", Arrays.asList(reordered, row(3L, "c", 3))));
+		
+		assertEquals(3L, count());
+		assertEquals("a", find(1L).getName());
+		assertEquals("b2", find(2L).getName());
+		assertEquals(Integer.valueOf(22), find(2L).getAge());
+		assertEquals("c", find(3L).getName());
+	}
+	
+	@Test
+	public void testUpsertAllEmpty() {
+		assertEquals(0, dao.upsertAll("UpsertCustomer", Collections.<Map<String, Object>>emptyList()));
+	}
+	
+	private Into<UpsertCustomer> customer(Long id, String name, Integer age) {
+		return dao.insert(UpsertCustomer.class)
+			.value(i -> i.getId()).set(id)
+			.value(i -> i.getName()).set(name)
+			.value(i -> i.getAge()).set(age);
+	}
+	
+	private Map<String, Object> row(Long id, String name, Integer age) {
+		Map<String, Object> row = new LinkedHashMap<String, Object>();
+		row.put("id", id);
+		row.put("name", name);
+		row.put("age", age);
+		return row;
+	}
+	
+	private UpsertCustomer find(Long id) {
+		em.clear();
+		return em.find(UpsertCustomer.class, id);
+	}
+	
+	private long count() {
+		return em.createQuery("select count(c) from UpsertCustomer c", Long.class).getSingleResult();
+	}
+
+}